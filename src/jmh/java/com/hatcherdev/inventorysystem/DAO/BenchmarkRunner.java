@@ -0,0 +1,41 @@
+package com.hatcherdev.inventorysystem.DAO;
+
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.ChainedOptionsBuilder;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Runs the benchmarks and writes the results as JSON.
+ *
+ * Usage: BenchmarkRunner resultFile [benchmark regex ...]
+ */
+public class BenchmarkRunner {
+
+    public static void main(String[] args) throws RunnerException {
+
+        if (args.length < 1) {
+            System.out.println("Usage: BenchmarkRunner resultFile [benchmark regex ...]");
+            System.exit(-1);
+        }
+
+        ChainedOptionsBuilder options = new OptionsBuilder()
+                .resultFormat(ResultFormatType.JSON)
+                .result(args[0]);
+
+        boolean included = false;
+        for (int i = 1; i < args.length; i++) {
+            if (!args[i].isBlank()) {
+                options.include(args[i]);
+                included = true;
+            }
+        }
+        if (!included) {
+            options.include("com\\.hatcherdev\\.inventorysystem\\..*Benchmark");
+        }
+
+        new Runner(options.build()).run();
+    }
+
+}
@@ -0,0 +1,77 @@
+package com.hatcherdev.inventorysystem.DAO;
+
+import com.hatcherdev.inventorysystem.objects.Inventory;
+import com.hatcherdev.inventorysystem.objects.InventoryEvent;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class EventCodecBenchmark {
+
+    private static final int STORE_NUMBER = 1234;
+    private static final String SKU = "A1B2C3D4E5";
+    private static final int INVENTORY_CHANGE = -3;
+
+    private final InventoryEvent event = new InventoryEvent();
+
+    private String legacyKey;
+    private String legacyValue;
+    private byte[] legacyKeyBytes;
+    private byte[] legacyValueBytes;
+    private byte[] binaryValueBytes;
+
+    @Setup
+    public void setup() {
+        legacyKey = STORE_NUMBER + "|" + SKU;
+        legacyValue = Integer.toString(INVENTORY_CHANGE);
+        legacyKeyBytes = legacyKey.getBytes(StandardCharsets.US_ASCII);
+        legacyValueBytes = legacyValue.getBytes(StandardCharsets.US_ASCII);
+        binaryValueBytes = InventoryEventCodec.encodeValue(STORE_NUMBER, SKU, INVENTORY_CHANGE, 1L, 1L);
+    }
+
+    // the key and value handling processInventoryEvents used before the codec
+    @Benchmark
+    public Inventory decodeStringSplit() {
+        String[] recordKeyFields = legacyKey.split("\\|");
+        int storeNumber = Integer.parseInt(recordKeyFields[0]);
+        String productSku = recordKeyFields[1];
+        int inventoryCount = Integer.parseInt(legacyValue);
+        return new Inventory(storeNumber, productSku, inventoryCount);
+    }
+
+    @Benchmark
+    public boolean decodeLegacyBytes() {
+        return InventoryEventCodec.decode(legacyKeyBytes, legacyValueBytes, 1L, event);
+    }
+
+    @Benchmark
+    public boolean decodeBinary() {
+        return InventoryEventCodec.decode(legacyKeyBytes, binaryValueBytes, 1L, event);
+    }
+
+    // the key building storeInventoryChange used before the codec
+    @Benchmark
+    public String encodeKeyConcat() {
+        Integer storeNumber = STORE_NUMBER;
+        return storeNumber.toString() + "|" + SKU;
+    }
+
+    @Benchmark
+    public byte[] encodeKey() {
+        return InventoryEventCodec.encodeKey(STORE_NUMBER, SKU);
+    }
+
+    @Benchmark
+    public byte[] encodeBinaryValue() {
+        return InventoryEventCodec.encodeValue(STORE_NUMBER, SKU, INVENTORY_CHANGE, 1L, 1L);
+    }
+
+}
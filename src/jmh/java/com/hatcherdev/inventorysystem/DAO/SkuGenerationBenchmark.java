@@ -0,0 +1,37 @@
+package com.hatcherdev.inventorysystem.DAO;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SkuGenerationBenchmark {
+
+    private InventoryDAO inventoryDAO;
+
+    @Setup
+    public void setup() {
+        inventoryDAO = new InventoryDAO(InventoryDAO.StorageDestination.DATABASE, 1, StandInDataSource.create());
+    }
+
+    @TearDown
+    public void teardown() {
+        inventoryDAO.teardown();
+    }
+
+    @Benchmark
+    public String randomSku() {
+        return inventoryDAO.getRandomSKU();
+    }
+
+    @Benchmark
+    public Object randomInventoryChange() {
+        return inventoryDAO.createRandomInventoryChange();
+    }
+
+}
@@ -0,0 +1,54 @@
+package com.hatcherdev.inventorysystem.DAO;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SqlBindingBenchmark {
+
+    private PreparedStatement pstmt;
+
+    @Setup
+    public void setup() {
+        pstmt = StandInDataSource.newPreparedStatement("INSERT INTO inventory ( store_no, product_sku, inventory_count ) VALUES ( ?, ?, ? )");
+    }
+
+    // how storeInventoryChange binds one row
+    @Benchmark
+    public PreparedStatement bindUpsertRow() throws SQLException {
+        int storeNumber = 1;
+        int inventoryChange = 3;
+        StatementBinder binder = p -> {
+            p.setInt(1, storeNumber);
+            p.setString(2, "A1B2C3D4E5");
+            p.setInt(3, inventoryChange);
+        };
+        binder.bind(pstmt);
+        return pstmt;
+    }
+
+    // the old way: every argument as a String, probed with parseInt
+    @Benchmark
+    public PreparedStatement bindUpsertRowFromStrings() throws SQLException {
+        Integer storeNumber = 1;
+        Integer inventoryChange = 3;
+        String[] args = new String[]{storeNumber.toString(), "A1B2C3D4E5", inventoryChange.toString()};
+        for (int i = 0; i < args.length; i++) {
+            try {
+                pstmt.setInt(i + 1, Integer.parseInt(args[i]));
+            } catch (NumberFormatException e) {
+                pstmt.setString(i + 1, args[i]);
+            }
+        }
+        return pstmt;
+    }
+
+}
@@ -0,0 +1,129 @@
+package com.hatcherdev.inventorysystem.DAO;
+
+import javax.sql.DataSource;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+
+/**
+ * An in-process stand-in for the cluster.  Connections accept any SQL,
+ * statements keep their bound parameters, and every update reports one
+ * row per four parameters (one upsert row), so the DAO code paths can be
+ * benchmarked without a database.
+ */
+class StandInDataSource {
+
+    private StandInDataSource() {
+    }
+
+    static DataSource create() {
+        return (DataSource) Proxy.newProxyInstance(StandInDataSource.class.getClassLoader(),
+                new Class<?>[]{DataSource.class},
+                (proxy, method, args) -> {
+                    if (method.getName().equals("getConnection")) {
+                        return newConnection();
+                    }
+                    return defaultValue(method);
+                });
+    }
+
+    static PreparedStatement newPreparedStatement(String sql) {
+        return (PreparedStatement) Proxy.newProxyInstance(StandInDataSource.class.getClassLoader(),
+                new Class<?>[]{PreparedStatement.class},
+                new StatementHandler(sql));
+    }
+
+    private static Connection newConnection() {
+        return (Connection) Proxy.newProxyInstance(StandInDataSource.class.getClassLoader(),
+                new Class<?>[]{Connection.class},
+                new InvocationHandler() {
+                    private boolean autoCommit = true;
+                    private boolean closed;
+
+                    @Override
+                    public Object invoke(Object proxy, Method method, Object[] args) {
+                        switch (method.getName()) {
+                            case "prepareStatement":
+                                return newPreparedStatement((String) args[0]);
+                            case "setAutoCommit":
+                                autoCommit = (Boolean) args[0];
+                                return null;
+                            case "getAutoCommit":
+                                return autoCommit;
+                            case "isValid":
+                                return !closed;
+                            case "isClosed":
+                                return closed;
+                            case "close":
+                                closed = true;
+                                return null;
+                            default:
+                                return defaultValue(method);
+                        }
+                    }
+                });
+    }
+
+    private static class StatementHandler implements InvocationHandler {
+        private final String sql;
+        private Object[] params = new Object[16];
+        private int paramCount;
+
+        private StatementHandler(String sql) {
+            this.sql = sql;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) {
+            String name = method.getName();
+            if (name.startsWith("set") && args != null && args.length == 2 && args[0] instanceof Integer) {
+                int place = (Integer) args[0];
+                if (place > params.length) {
+                    Object[] grown = new Object[Math.max(place, params.length * 2)];
+                    System.arraycopy(params, 0, grown, 0, params.length);
+                    params = grown;
+                }
+                params[place - 1] = args[1];
+                paramCount = Math.max(paramCount, place);
+                return null;
+            }
+            switch (name) {
+                case "clearParameters":
+                    paramCount = 0;
+                    return null;
+                case "execute":
+                    return false;
+                case "executeUpdate":
+                case "getUpdateCount":
+                    return Math.max(1, paramCount / 4);
+                case "isClosed":
+                    return false;
+                case "toString":
+                    return sql;
+                case "hashCode":
+                    return System.identityHashCode(proxy);
+                case "equals":
+                    return proxy == args[0];
+                default:
+                    return defaultValue(method);
+            }
+        }
+    }
+
+    private static Object defaultValue(Method method) {
+        Class<?> type = method.getReturnType();
+        if (type == boolean.class) {
+            return false;
+        }
+        if (type == int.class) {
+            return 0;
+        }
+        if (type == long.class) {
+            return 0L;
+        }
+        return null;
+    }
+
+}
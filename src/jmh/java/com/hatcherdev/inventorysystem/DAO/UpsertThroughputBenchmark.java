@@ -0,0 +1,57 @@
+package com.hatcherdev.inventorysystem.DAO;
+
+import com.hatcherdev.inventorysystem.objects.Inventory;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Client-side cost of the DAO write paths against StandInDataSource: SQL
+ * building, argument binding, pooling, and the retry wrapper, without any
+ * network or database time.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class UpsertThroughputBenchmark {
+
+    // a constant rather than a @Param, since @OperationsPerInvocation has
+    // to match it
+    private static final int BATCH_ROWS = 1000;
+
+    private InventoryDAO inventoryDAO;
+    private List<Inventory> inventoryChanges;
+
+    @Setup
+    public void setup() {
+        inventoryDAO = new InventoryDAO(InventoryDAO.StorageDestination.DATABASE, 1, StandInDataSource.create());
+        inventoryChanges = new ArrayList<>(BATCH_ROWS);
+        for (int i = 0; i < BATCH_ROWS; i++) {
+            inventoryChanges.add(inventoryDAO.createRandomInventoryChange());
+        }
+    }
+
+    @TearDown
+    public void teardown() {
+        inventoryDAO.teardown();
+    }
+
+    @Benchmark
+    public void singleRowUpsert() {
+        inventoryDAO.storeInventoryChange(1, "A1B2C3D4E5", 3);
+    }
+
+    // one operation writes BATCH_ROWS rows, so scores are per row
+    @Benchmark
+    @OperationsPerInvocation(BATCH_ROWS)
+    public int batchedUpsert() {
+        return inventoryDAO.storeInventoryChanges(inventoryChanges);
+    }
+
+}
@@ -0,0 +1,40 @@
+package com.hatcherdev.inventorysystem.bizlogic;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class WorkloadGeneratorBenchmark {
+
+    @Param({"uniform", "zipfian"})
+    public String distribution;
+
+    @Param({"false", "true"})
+    public boolean storeBatches;
+
+    private WorkloadGenerator.Changes changes;
+
+    @Setup
+    public void setup() {
+        WorkloadGenerator.KeyDistribution keys;
+        if (distribution.equals("zipfian")) {
+            keys = new WorkloadGenerator.Zipfian(1000000, "0.99");
+        } else {
+            keys = new WorkloadGenerator.Uniform();
+        }
+        int[] stores = WorkloadGenerator.parseStores("1-100", 1);
+        changes = new WorkloadGenerator(keys, stores, 4, storeBatches, 42, 1, 5).changes(0, 1);
+    }
+
+    @Benchmark
+    public Object nextChange() {
+        return changes.next();
+    }
+
+}
@@ -0,0 +1,370 @@
+package com.hatcherdev.inventorysystem.DAO;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * A small bounded pool of JDBC connections.
+ *
+ * Opening a connection to CockroachDB means a TLS handshake with client
+ * certs, which costs more than most of the statements we run, so
+ * connections are kept open and handed out again.  Each pooled connection
+ * also keeps a cache of prepared statements keyed by SQL text.
+ */
+class ConnectionPool implements AutoCloseable {
+
+    private static final Logger logger = LoggerFactory.getLogger(ConnectionPool.class);
+
+    private final DataSource ds;
+    private final int minSize;
+    private final int maxSize;
+    private final long idleTimeoutMillis;
+    private final long maxWaitMillis;
+    private final long healthCheckIdleMillis;
+    private final int validationTimeoutSeconds;
+    private final int statementCacheSize;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition connectionReturned = lock.newCondition();
+    // most recently returned connections are at the head of the deque
+    private final Deque<PooledConnection> idle = new ArrayDeque<>();
+    private int totalConnections;
+    private boolean closed;
+
+    private final ScheduledExecutorService evictor;
+
+    ConnectionPool(DataSource ds, int minSize, int maxSize, long idleTimeoutMillis, long maxWaitMillis,
+                   long healthCheckIdleMillis, int validationTimeoutSeconds, int statementCacheSize) {
+        if (minSize < 0 || maxSize < 1 || minSize > maxSize) {
+            throw new IllegalArgumentException("invalid pool size: min " + minSize + ", max " + maxSize);
+        }
+        this.ds = ds;
+        this.minSize = minSize;
+        this.maxSize = maxSize;
+        this.idleTimeoutMillis = idleTimeoutMillis;
+        this.maxWaitMillis = maxWaitMillis;
+        this.healthCheckIdleMillis = healthCheckIdleMillis;
+        this.validationTimeoutSeconds = validationTimeoutSeconds;
+        this.statementCacheSize = statementCacheSize;
+
+        evictor = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "connection-pool-evictor");
+            t.setDaemon(true);
+            return t;
+        });
+        long evictionInterval = Math.max(1000, idleTimeoutMillis / 2);
+        evictor.execute(this::fillToMinimumSize);
+        evictor.scheduleWithFixedDelay(this::evictIdleConnections, evictionInterval, evictionInterval, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Borrow a connection from the pool, opening a new one if the pool is
+     * below its max size.  Close the returned connection to give it back.
+     */
+    PooledConnection borrow() throws SQLException {
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(maxWaitMillis);
+
+        while (true) {
+            PooledConnection candidate = null;
+            boolean create = false;
+
+            lock.lock();
+            try {
+                while (candidate == null && !create) {
+                    if (closed) {
+                        throw new SQLException("connection pool is closed", "08003");
+                    }
+                    candidate = idle.pollFirst();
+                    if (candidate == null) {
+                        if (totalConnections < maxSize) {
+                            totalConnections++;
+                            create = true;
+                        } else {
+                            long remaining = deadline - System.nanoTime();
+                            if (remaining <= 0) {
+                                throw new SQLException("timed out after " + maxWaitMillis + "ms waiting for a pooled connection", "08001");
+                            }
+                            try {
+                                connectionReturned.awaitNanos(remaining);
+                            } catch (InterruptedException e) {
+                                Thread.currentThread().interrupt();
+                                throw new SQLException("interrupted waiting for a pooled connection", "08001", e);
+                            }
+                        }
+                    }
+                }
+            } finally {
+                lock.unlock();
+            }
+
+            if (create) {
+                try {
+                    return new PooledConnection(this, ds.getConnection(), statementCacheSize);
+                } catch (SQLException | RuntimeException e) {
+                    releaseSlot();
+                    throw e;
+                }
+            }
+
+            if (isHealthy(candidate)) {
+                candidate.borrowed();
+                return candidate;
+            }
+            destroy(candidate);
+        }
+    }
+
+    // Connections that have sat idle for a while may have been dropped by the
+    // server or a load balancer, so check them before handing them out.
+    private boolean isHealthy(PooledConnection pooled) {
+        if (System.currentTimeMillis() - pooled.getLastReturnedMillis() < healthCheckIdleMillis) {
+            return true;
+        }
+        try {
+            return pooled.getConnection().isValid(validationTimeoutSeconds);
+        } catch (SQLException e) {
+            return false;
+        }
+    }
+
+    void release(PooledConnection pooled) {
+        boolean reusable = !pooled.isBroken();
+        if (reusable) {
+            try {
+                Connection connection = pooled.getConnection();
+                if (connection.isClosed()) {
+                    reusable = false;
+                } else if (!connection.getAutoCommit()) {
+                    // don't hand out a connection in the middle of a transaction
+                    connection.rollback();
+                }
+            } catch (SQLException e) {
+                reusable = false;
+            }
+        }
+
+        if (!reusable) {
+            destroy(pooled);
+            return;
+        }
+
+        lock.lock();
+        try {
+            if (closed) {
+                totalConnections--;
+            } else {
+                pooled.returned();
+                idle.addFirst(pooled);
+                connectionReturned.signal();
+                return;
+            }
+        } finally {
+            lock.unlock();
+        }
+        pooled.closeQuietly();
+    }
+
+    private void destroy(PooledConnection pooled) {
+        pooled.closeQuietly();
+        releaseSlot();
+    }
+
+    private void releaseSlot() {
+        lock.lock();
+        try {
+            totalConnections--;
+            connectionReturned.signal();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void evictIdleConnections() {
+        long now = System.currentTimeMillis();
+        Deque<PooledConnection> evicted = new ArrayDeque<>();
+
+        lock.lock();
+        try {
+            // the least recently used connections are at the tail
+            Iterator<PooledConnection> iter = idle.descendingIterator();
+            while (iter.hasNext() && totalConnections - evicted.size() > minSize) {
+                PooledConnection pooled = iter.next();
+                if (now - pooled.getLastReturnedMillis() >= idleTimeoutMillis) {
+                    iter.remove();
+                    evicted.add(pooled);
+                }
+            }
+            totalConnections -= evicted.size();
+        } finally {
+            lock.unlock();
+        }
+
+        for (PooledConnection pooled : evicted) {
+            pooled.closeQuietly();
+        }
+        if (!evicted.isEmpty()) {
+            logger.debug("Evicted {} idle connections", evicted.size());
+        }
+
+        fillToMinimumSize();
+    }
+
+    // Keep minSize connections open so a burst after a quiet period doesn't
+    // pay for the handshakes all at once.
+    private void fillToMinimumSize() {
+        while (true) {
+            lock.lock();
+            try {
+                if (closed || totalConnections >= minSize) {
+                    return;
+                }
+                totalConnections++;
+            } finally {
+                lock.unlock();
+            }
+
+            PooledConnection pooled;
+            try {
+                pooled = new PooledConnection(this, ds.getConnection(), statementCacheSize);
+            } catch (SQLException e) {
+                releaseSlot();
+                logger.warn("Unable to open pooled connection: {}", e.getMessage());
+                return;
+            }
+            release(pooled);
+        }
+    }
+
+    @Override
+    public void close() {
+        evictor.shutdownNow();
+
+        Deque<PooledConnection> toClose;
+        lock.lock();
+        try {
+            closed = true;
+            toClose = new ArrayDeque<>(idle);
+            idle.clear();
+            totalConnections -= toClose.size();
+            connectionReturned.signalAll();
+        } finally {
+            lock.unlock();
+        }
+
+        for (PooledConnection pooled : toClose) {
+            pooled.closeQuietly();
+        }
+    }
+
+    /**
+     * A connection on loan from the pool.  Statements returned by
+     * prepareStatement are cached, so callers must not close them.
+     */
+    static class PooledConnection implements AutoCloseable {
+
+        private final ConnectionPool pool;
+        private final Connection connection;
+        private final Map<String, PreparedStatement> statementCache;
+        private long lastReturnedMillis;
+        private boolean broken;
+
+        private PooledConnection(ConnectionPool pool, Connection connection, int statementCacheSize) {
+            this.pool = pool;
+            this.connection = connection;
+            this.statementCache = new LinkedHashMap<>(16, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<String, PreparedStatement> eldest) {
+                    if (size() > statementCacheSize) {
+                        closeStatementQuietly(eldest.getValue());
+                        return true;
+                    }
+                    return false;
+                }
+            };
+        }
+
+        Connection getConnection() {
+            return connection;
+        }
+
+        /**
+         * @return a prepared statement for the SQL text, reusing the one
+         * prepared earlier on this connection if there is one.
+         */
+        PreparedStatement prepareStatement(String sqlCode) throws SQLException {
+            PreparedStatement pstmt = statementCache.get(sqlCode);
+            if (pstmt == null || pstmt.isClosed()) {
+                pstmt = connection.prepareStatement(sqlCode);
+                statementCache.put(sqlCode, pstmt);
+            } else {
+                pstmt.clearParameters();
+            }
+            return pstmt;
+        }
+
+        /**
+         * Mark the connection as unusable so it's closed instead of being
+         * returned to the pool.
+         */
+        void markBroken() {
+            broken = true;
+        }
+
+        boolean isBroken() {
+            return broken;
+        }
+
+        long getLastReturnedMillis() {
+            return lastReturnedMillis;
+        }
+
+        private void borrowed() {
+            broken = false;
+        }
+
+        private void returned() {
+            lastReturnedMillis = System.currentTimeMillis();
+        }
+
+        private void closeQuietly() {
+            for (PreparedStatement pstmt : statementCache.values()) {
+                closeStatementQuietly(pstmt);
+            }
+            statementCache.clear();
+            try {
+                connection.close();
+            } catch (SQLException ignored) {
+                // nothing more we can do with a connection that won't close
+            }
+        }
+
+        private static void closeStatementQuietly(PreparedStatement pstmt) {
+            try {
+                pstmt.close();
+            } catch (SQLException ignored) {
+                // the statement goes away with its connection anyway
+            }
+        }
+
+        @Override
+        public void close() {
+            pool.release(this);
+        }
+    }
+
+}
@@ -3,24 +3,56 @@ package com.hatcherdev.inventorysystem.DAO;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import com.hatcherdev.inventorysystem.config.AppConfig;
+import com.hatcherdev.inventorysystem.metrics.InventoryMetrics;
+
+import io.prometheus.client.Histogram;
+
+import org.postgresql.PGConnection;
+import org.postgresql.copy.CopyIn;
+import org.postgresql.copy.CopyManager;
 import org.postgresql.ds.PGSimpleDataSource;
+import javax.sql.DataSource;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
 import java.sql.*;
 
-import java.util.Random;
+import java.util.List;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 public class DAOBase {
 
     private static final Logger logger = LoggerFactory.getLogger(DAOBase.class);
 
-    private static final int MAX_RETRY_COUNT = 3;
-    private static final String RETRY_SQL_STATE = "40001";
+    // not a server state; reported when a statement in runSQLInTransaction
+    // updates a different number of rows than required
+    static final String UNEXPECTED_UPDATE_COUNT_SQL_STATE = "IE001";
 
-    private final Random rand = new Random();
-    private PGSimpleDataSource ds;
+    // shared so the retry budget covers the whole process
+    private static final TransactionRetryExecutor retryExecutor = TransactionRetryExecutor.fromConfig();
+    private static final StatementLog statementLog = StatementLog.fromConfig();
 
-    private void initializeDataSource(){
+    private DataSource ds;
+    private ConnectionPool pool;
+
+    public DAOBase() {
+
+    }
+
+    /**
+     * Use the given data source instead of connecting to the cluster, e.g.,
+     * an in-process stand-in for benchmarks.
+     */
+    DAOBase(DataSource dataSource) {
+        ds = dataSource;
+    }
 
-        //TODO: pull these settings from config
+    private void initializeDataSource(){
 
         /*
             Setup for user:
@@ -30,10 +62,11 @@ public class DAOBase {
             create database invmgmt;
             grant all on database invmgmt to app1;
         */
-        String user = "app1";
-        String host = "localhost";
-        int port = 26257;
-        String databaseName = "invmgmt";
+        String user = AppConfig.getString("db.user", "app1");
+        String host = AppConfig.getString("db.host", "localhost");
+        int port = AppConfig.getInt("db.port", 26257);
+        String databaseName = AppConfig.getString("db.database", "invmgmt");
+        String password = AppConfig.getString("db.password", "");
 
         /*
             Java apps using JDBC expect certs to be in a DER format which is not the default format that the "cockroach cert create-client" command produces (it creates PEM format).
@@ -44,30 +77,71 @@ public class DAOBase {
             openssl x509 -outform der -in ca.crt -out ca.crt.der
             openssl x509 -outform der -in client.app1.crt -out client.app1.crt.der
          */
-        boolean useSsl = true;
-        String sslMode = "verify-full";
-        String sslCertPath = "/Users/jimhatcher/local_certs/client.app1.crt.der";
-        String sslKeyPath = "/Users/jimhatcher/local_certs/client.app1.key.der";
-        String sslRootCertPath = "/Users/jimhatcher/local_certs/ca.crt.der";
-
-
-        ds = new PGSimpleDataSource();
-        ds.setServerNames(new String[]{host});
-        ds.setPortNumbers(new int[]{port});
-        ds.setDatabaseName(databaseName);
-        ds.setUser(user);
-        //not setting a password (i.e. ds.setPassword("secret")) because we're authenticating with certs
-        ds.setApplicationName("JavaInventoryApp");
-
-        ds.setSsl(useSsl);
+        boolean useSsl = AppConfig.getBoolean("db.ssl", true);
+        String sslMode = AppConfig.getString("db.sslMode", "verify-full");
+        String sslCertPath = AppConfig.getString("db.sslCert", "/Users/jimhatcher/local_certs/client.app1.crt.der");
+        String sslKeyPath = AppConfig.getString("db.sslKey", "/Users/jimhatcher/local_certs/client.app1.key.der");
+        String sslRootCertPath = AppConfig.getString("db.sslRootCert", "/Users/jimhatcher/local_certs/ca.crt.der");
+
+
+        PGSimpleDataSource pgds = new PGSimpleDataSource();
+        pgds.setServerNames(new String[]{host});
+        pgds.setPortNumbers(new int[]{port});
+        pgds.setDatabaseName(databaseName);
+        pgds.setUser(user);
+        //normally no password, since we authenticate with certs
+        if (!password.isEmpty()) {
+            pgds.setPassword(password);
+        }
+        pgds.setApplicationName("JavaInventoryApp");
+
+        pgds.setSsl(useSsl);
         if (useSsl) {
-            ds.setSslMode(sslMode);
-            ds.setSslCert(sslCertPath);
-            ds.setSslKey(sslKeyPath);
-            ds.setSslRootCert(sslRootCertPath);
+            pgds.setSslMode(sslMode);
+            pgds.setSslCert(sslCertPath);
+            pgds.setSslKey(sslKeyPath);
+            pgds.setSslRootCert(sslRootCertPath);
 
         }
 
+        // Use server-side prepared statements from the first execution,
+        // since the pooled connections keep their statements around.
+        pgds.setPrepareThreshold(1);
+
+        ds = pgds;
+
+    }
+
+    private void initializePool() {
+
+        pool = new ConnectionPool(ds,
+                AppConfig.getInt("db.pool.minSize", 1),
+                AppConfig.getInt("db.pool.maxSize", 10),
+                AppConfig.getLong("db.pool.idleTimeoutMillis", 300000),
+                AppConfig.getLong("db.pool.maxWaitMillis", 30000),
+                AppConfig.getLong("db.pool.healthCheckIdleMillis", 30000),
+                AppConfig.getInt("db.pool.validationTimeoutSeconds", 5),
+                AppConfig.getInt("db.pool.statementCacheSize", 64));
+
+    }
+
+    private synchronized ConnectionPool.PooledConnection getPooledConnection() throws SQLException {
+        if (pool == null) {
+            if (ds == null) {
+                initializeDataSource();
+            }
+            initializePool();
+        }
+        return pool.borrow();
+    }
+
+    // SQL states in class 08 mean the connection itself is gone, so it
+    // shouldn't go back into the pool.
+    static void markBrokenIfConnectionError(ConnectionPool.PooledConnection pooled, SQLException e) {
+        String sqlState = e.getSQLState();
+        if (sqlState != null && sqlState.startsWith("08")) {
+            pooled.markBroken();
+        }
     }
 
     /**
@@ -79,239 +153,371 @@ public class DAOBase {
      * execute.  Can have placeholders, e.g., "INSERT INTO accounts
      * (id, balance) VALUES (?, ?)".
      *
-     * @param args String Varargs to fill in the SQL code's
-     * placeholders.
+     * @param binder fills in the SQL code's placeholders.
      * @return Integer Number of rows updated, or -1 if an error is thrown.
      */
-    Integer runSQL(String sqlCode, String... args) {
-
-//        // This block is only used to emit class and method names in
-//        // the program output.  It is not necessary in production
-//        // code.
-//        StackTraceElement[] stacktrace = Thread.currentThread().getStackTrace();
-//        StackTraceElement elem = stacktrace[2];
-//        String callerClass = elem.getClassName();
-//        String callerMethod = elem.getMethodName();
-
-        if (ds == null) {
-            initializeDataSource();
-        }
+    Integer runSQL(String sqlCode, StatementBinder binder) {
 
-        int rv = 0;
+        int rv;
 
-        try (Connection connection = ds.getConnection()) {
+        String statement = InventoryMetrics.statementLabel(sqlCode);
+        Histogram.Timer timer = InventoryMetrics.SQL_DURATION.labels(statement).startTimer();
+        try (ConnectionPool.PooledConnection pooled = getPooledConnection()) {
 
-            // We're managing the commit lifecycle ourselves so we can
-            // automatically issue transaction retries.
-            connection.setAutoCommit(false);
+            rv = retryExecutor.execute(pooled, statement, p -> {
 
-            int retryCount = 0;
+                // Statements are cached by the pooled connection, so
+                // they're not closed here.
+                PreparedStatement pstmt = p.prepareStatement(sqlCode);
+                binder.bind(pstmt);
 
-            while (retryCount <= MAX_RETRY_COUNT) {
-
-                if (retryCount == MAX_RETRY_COUNT) {
-                    String err = String.format("hit max of %s retries, aborting", MAX_RETRY_COUNT);
-                    throw new RuntimeException(err);
+                if (logger.isDebugEnabled()) {
+                    logger.debug("{}", pstmt);
                 }
-
-                try (PreparedStatement pstmt = connection.prepareStatement(sqlCode)) {
-
-                    // Loop over the args and insert them into the
-                    // prepared statement based on their types.  In
-                    // this simple example we classify the argument
-                    // types as "integers" and "everything else"
-                    // (a.k.a. strings).
-                    for (int i=0; i<args.length; i++) {
-                        int place = i + 1;
-                        String arg = args[i];
-
-                        try {
-                            int val = Integer.parseInt(arg);
-                            pstmt.setInt(place, val);
-                        } catch (NumberFormatException e) {
-                            pstmt.setString(place, arg);
+                long start = System.nanoTime();
+                int updateCount = 0;
+                if (pstmt.execute()) {
+                    // We know that `pstmt.getResultSet()` will not return
+                    // `null` if `pstmt.execute()` was true.  Nothing reads
+                    // the rows, but drain them before committing.
+                    try (ResultSet rs = pstmt.getResultSet()) {
+                        while (rs.next()) {
+                            // skip
                         }
                     }
+                } else {
+                    updateCount = pstmt.getUpdateCount();
+                }
+                statementLog.record(statement, pstmt, System.nanoTime() - start);
+                return updateCount;
+            });
+            InventoryMetrics.recordFirstWrite("database");
 
-                    if (pstmt.execute()) {
-                        // We know that `pstmt.getResultSet()` will
-                        // not return `null` if `pstmt.execute()` was
-                        // true
-                        ResultSet rs = pstmt.getResultSet();
-                        ResultSetMetaData rsmeta = rs.getMetaData();
-                        int colCount = rsmeta.getColumnCount();
+        } catch (SQLException e) {
+            InventoryMetrics.SQL_ABORTS.labels(statement).inc();
+            logger.error("DAOBase.runSQL ERROR: { state => {}, cause => {}, message => {} }", e.getSQLState(), e.getCause(), e.getMessage());
+            rv = -1;
+        } finally {
+            timer.observeDuration();
+        }
 
-//                        // This printed output is for debugging and/or demonstration
-//                        // purposes only.  It would not be necessary in production code.
-//                        System.out.printf("\n%s.%s:\n    '%s'\n", callerClass, callerMethod, pstmt);
-                        logger.debug(pstmt.toString());
+        return rv;
+    }
 
-                        while (rs.next()) {
-                            for (int i = 1; i <= colCount; i++) {
-                                String name = rsmeta.getColumnName(i);
-                                String type = rsmeta.getColumnTypeName(i);
-
-                                // In this "bank account" example we know we are only handling
-                                // integer values (technically 64-bit INT8s, the CockroachDB
-                                // default).  This code could be made into a switch statement
-                                // to handle the various SQL types needed by the application.
-                                if ("int8".equals(type)) {
-                                    int val = rs.getInt(name);
-
-                                    // This printed output is for debugging and/or demonstration
-                                    // purposes only.  It would not be necessary in production code.
-                                    //logger.debug("    %-8s => %10s\n", name, val);
-                                }
-                            }
-                        }
-                    } else {
-                        int updateCount = pstmt.getUpdateCount();
-                        rv += updateCount;
-
-//                        // This printed output is for debugging and/or demonstration
-//                        // purposes only.  It would not be necessary in production code.
-//                        System.out.printf("\n%s.%s:\n    '%s'\n", callerClass, callerMethod, pstmt);
-                        logger.debug(pstmt.toString());
-                    }
+    /**
+     * Run several SQL statements in one transaction, with the same
+     * transaction retry logic as runSQL.  If the transaction has to be
+     * retried, every statement is run again.
+     *
+     * @param sqlCodes the SQL statements to execute, in order.
+     *
+     * @param binders one binder per statement.
+     * @return Integer Number of rows updated by all statements, or -1 if an error is thrown.
+     */
+    Integer runSQLInTransaction(List<String> sqlCodes, List<StatementBinder> binders) {
+        return runSQLInTransaction(sqlCodes, binders, null);
+    }
 
-                    connection.commit();
-                    break;
-
-                } catch (SQLException e) {
-
-                    if (RETRY_SQL_STATE.equals(e.getSQLState())) {
-                        // Since this is a transaction retry error, we
-                        // roll back the transaction and sleep a
-                        // little before trying again.  Each time
-                        // through the loop we sleep for a little
-                        // longer than the last time
-                        // (A.K.A. exponential backoff).
-                        logger.warn(String.format("retryable exception occurred:\n    sql state = [%s]\n    message = [%s]\n    retry counter = %s\n", e.getSQLState(), e.getMessage(), retryCount));
-                        connection.rollback();
-                        retryCount++;
-                        int sleepMillis = (int)(Math.pow(2, retryCount) * 100) + rand.nextInt(100);
-                        logger.warn(String.format("Hit 40001 transaction retry error, sleeping %s milliseconds\n", sleepMillis));
-                        try {
-                            Thread.sleep(sleepMillis);
-                        } catch (InterruptedException ignored) {
-                            // Necessary to allow the Thread.sleep()
-                            // above so the retry loop can continue.
-                        }
+    /**
+     * Like runSQLInTransaction, but a statement can be required to update
+     * an exact number of rows, e.g., a conditional UPDATE that fences out a
+     * writer whose view is stale.  If one doesn't, the whole transaction is
+     * rolled back.
+     *
+     * @param expectedUpdateCounts the number of rows each statement must
+     * update, or -1 for any number; null to not check any.
+     * @return Integer Number of rows updated by all statements, or -1 if an
+     * error is thrown or a statement updated the wrong number of rows.
+     */
+    Integer runSQLInTransaction(List<String> sqlCodes, List<StatementBinder> binders, List<Integer> expectedUpdateCounts) {
+
+        if (sqlCodes.size() != binders.size()
+                || (expectedUpdateCounts != null && expectedUpdateCounts.size() != sqlCodes.size())) {
+            throw new IllegalArgumentException("sqlCodes, binders and expectedUpdateCounts must be the same size");
+        }
+        if (sqlCodes.isEmpty()) {
+            return 0;
+        }
+
+        int rv;
 
-                        rv = -1;
-                    } else {
-                        throw e;
+        String statement = InventoryMetrics.statementLabel(sqlCodes.get(0));
+        Histogram.Timer timer = InventoryMetrics.SQL_DURATION.labels(statement).startTimer();
+        try (ConnectionPool.PooledConnection pooled = getPooledConnection()) {
+
+            rv = retryExecutor.execute(pooled, statement, p -> {
+                int updated = 0;
+                for (int s = 0; s < sqlCodes.size(); s++) {
+                    PreparedStatement pstmt = p.prepareStatement(sqlCodes.get(s));
+                    binders.get(s).bind(pstmt);
+                    if (logger.isDebugEnabled()) {
+                        logger.debug("{}", pstmt);
+                    }
+                    long start = System.nanoTime();
+                    int count = pstmt.executeUpdate();
+                    statementLog.record(statement, pstmt, System.nanoTime() - start);
+                    int expected = expectedUpdateCounts == null ? -1 : expectedUpdateCounts.get(s);
+                    if (expected >= 0 && count != expected) {
+                        throw new SQLException(String.format("statement %d updated %d rows, expected %d", s, count, expected), UNEXPECTED_UPDATE_COUNT_SQL_STATE);
                     }
+                    updated += count;
                 }
-            }
+                return updated;
+            });
+            InventoryMetrics.recordFirstWrite("database");
+
         } catch (SQLException e) {
-            logger.error(String.format("BasicExampleDAO.runSQL ERROR: { state => %s, cause => %s, message => %s }\n", e.getSQLState(), e.getCause(), e.getMessage()));
+            InventoryMetrics.SQL_ABORTS.labels(statement).inc();
+            logger.error("runSQLInTransaction ERROR: { state => {}, cause => {}, message => {} }", e.getSQLState(), e.getCause(), e.getMessage());
             rv = -1;
+        } finally {
+            timer.observeDuration();
         }
 
         return rv;
     }
 
     /**
-     * Run SQL code in a way that automatically handles the
-     * transaction retry logic so we don't have to duplicate it in
-     * various places.
+     * Run a query and return its rows as a stream that reads from the
+     * server fetchSize rows at a time, so the whole result never has to be
+     * in memory.  The stream holds a pooled connection until it's closed,
+     * so always close it, e.g., with try-with-resources.
      *
-     * @param sqlCode a String containing the SQL code you want to
-     * execute.  Can have placeholders, e.g., "INSERT INTO accounts
-     * (id, balance) VALUES (?, ?)".
+     * Rows can't be taken back once the caller has seen them, so a query
+     * that hits a transaction retry error part way through isn't retried;
+     * the stream throws instead.
      *
-     * @param args String Varargs to fill in the SQL code's
-     * placeholders.
-     * @return Integer Number of rows updated, or -1 if an error is thrown.
+     * @param sqlCode a String containing the SQL query.
+     *
+     * @param mapper turns each row into an object.
+     *
+     * @param fetchSize number of rows to fetch from the server at a time.
+     *
+     * @param binder fills in the SQL code's placeholders.
+     * @return a stream of mapped rows; reading it can throw a
+     * RuntimeException caused by the SQLException.
      */
-    ResultSet runSQLSelect(String sqlCode, String... args) {
-
-        if (ds == null) {
-            initializeDataSource();
-        }
+    <T> Stream<T> streamSQLQuery(String sqlCode, RowMapper<T> mapper, int fetchSize) {
+        return streamSQLQuery(sqlCode, mapper, fetchSize, StatementBinder.NONE);
+    }
 
-        ResultSet rs = null;
+    <T> Stream<T> streamSQLQuery(String sqlCode, RowMapper<T> mapper, int fetchSize, StatementBinder binder) {
 
-        try (Connection connection = ds.getConnection()) {
+        String statement = InventoryMetrics.statementLabel(sqlCode);
+        ConnectionPool.PooledConnection pooled = null;
+        try {
+            pooled = getPooledConnection();
+            Connection connection = pooled.getConnection();
 
-            // We're managing the commit lifecycle ourselves so we can
-            // automatically issue transaction retries.
+            // The driver only fetches in chunks inside a transaction.
             connection.setAutoCommit(false);
 
-            int retryCount = 0;
+            PreparedStatement pstmt = pooled.prepareStatement(sqlCode);
+            binder.bind(pstmt);
+            pstmt.setFetchSize(fetchSize);
+
+            if (logger.isDebugEnabled()) {
+                logger.debug("{}", pstmt);
+            }
+            long start = System.nanoTime();
+            ResultSet rs = pstmt.executeQuery();
+            // the time to the first rows; the rest stream in as they're read
+            statementLog.record(statement, pstmt, System.nanoTime() - start);
+
+            ResultSetSpliterator<T> spliterator = new ResultSetSpliterator<>(rs, mapper, pooled, statement);
+            return StreamSupport.stream(spliterator, false).onClose(spliterator::close);
+
+        } catch (SQLException e) {
+            InventoryMetrics.SQL_ABORTS.labels(statement).inc();
+            logger.error("streamSQLQuery ERROR: { state => {}, cause => {}, message => {} }", e.getSQLState(), e.getCause(), e.getMessage());
+            if (pooled != null) {
+                markBrokenIfConnectionError(pooled, e);
+                pooled.close();
+            }
+            throw new RuntimeException("streamSQLQuery failed: " + e.getMessage(), e);
+        }
+    }
 
-            while (retryCount <= MAX_RETRY_COUNT) {
+    private static class ResultSetSpliterator<T> extends Spliterators.AbstractSpliterator<T> {
 
-                if (retryCount == MAX_RETRY_COUNT) {
-                    String err = String.format("hit max of %s retries, aborting", MAX_RETRY_COUNT);
-                    throw new RuntimeException(err);
+        private final ResultSet rs;
+        private final RowMapper<T> mapper;
+        private final ConnectionPool.PooledConnection pooled;
+        private final String statement;
+        private boolean closed;
+
+        private ResultSetSpliterator(ResultSet rs, RowMapper<T> mapper, ConnectionPool.PooledConnection pooled, String statement) {
+            super(Long.MAX_VALUE, Spliterator.ORDERED | Spliterator.NONNULL);
+            this.rs = rs;
+            this.mapper = mapper;
+            this.pooled = pooled;
+            this.statement = statement;
+        }
+
+        @Override
+        public boolean tryAdvance(Consumer<? super T> action) {
+            if (closed) {
+                return false;
+            }
+            try {
+                if (!rs.next()) {
+                    close();
+                    return false;
                 }
+                action.accept(mapper.map(rs));
+                return true;
+            } catch (SQLException e) {
+                InventoryMetrics.SQL_ABORTS.labels(statement).inc();
+                markBrokenIfConnectionError(pooled, e);
+                close();
+                throw new RuntimeException("streamSQLQuery failed: " + e.getMessage(), e);
+            }
+        }
 
-                try (PreparedStatement pstmt = connection.prepareStatement(sqlCode)) {
-
-                    // Loop over the args and insert them into the
-                    // prepared statement based on their types.  In
-                    // this simple example we classify the argument
-                    // types as "integers" and "everything else"
-                    // (a.k.a. strings).
-                    for (int i=0; i<args.length; i++) {
-                        int place = i + 1;
-                        String arg = args[i];
-
-                        try {
-                            int val = Integer.parseInt(arg);
-                            pstmt.setInt(place, val);
-                        } catch (NumberFormatException e) {
-                            pstmt.setString(place, arg);
-                        }
-                    }
+        // Safe to call more than once; the stream calls it when it's closed
+        // and we call it when the rows run out.
+        private void close() {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            try {
+                rs.close();
+                pooled.getConnection().commit();
+            } catch (SQLException e) {
+                markBrokenIfConnectionError(pooled, e);
+            }
+            pooled.close();
+        }
+    }
 
-                    logger.debug(pstmt.toString());
-                    if (pstmt.execute()) {
-                        // We know that `pstmt.getResultSet()` will
-                        // not return `null` if `pstmt.execute()` was
-                        // true
-                        rs = pstmt.getResultSet();
+    /**
+     * Run a query and hand each row to a callback while the connection is
+     * still open, fetching fetchSize rows at a time, with the same
+     * transaction retry logic as runSQL.  If the query has to be retried,
+     * rows the callback has already seen are delivered again.
+     *
+     * @param sqlCode a String containing the SQL query.
+     *
+     * @param callback called once per row.
+     *
+     * @param fetchSize number of rows to fetch from the server at a time.
+     *
+     * @param binder fills in the SQL code's placeholders.
+     * @return Integer Number of rows read, or -1 if an error is thrown.
+     */
+    Integer runSQLQuery(String sqlCode, RowCallback callback, int fetchSize) {
+        return runSQLQuery(sqlCode, callback, fetchSize, StatementBinder.NONE);
+    }
+
+    Integer runSQLQuery(String sqlCode, RowCallback callback, int fetchSize, StatementBinder binder) {
+
+        int rv;
+
+        String statement = InventoryMetrics.statementLabel(sqlCode);
+        Histogram.Timer timer = InventoryMetrics.SQL_DURATION.labels(statement).startTimer();
+        try (ConnectionPool.PooledConnection pooled = getPooledConnection()) {
+
+            // The driver only fetches in chunks inside a transaction, which
+            // the retry executor opens for us.
+            rv = retryExecutor.execute(pooled, statement, p -> {
+                PreparedStatement pstmt = p.prepareStatement(sqlCode);
+                binder.bind(pstmt);
+                pstmt.setFetchSize(fetchSize);
+
+                if (logger.isDebugEnabled()) {
+                    logger.debug("{}", pstmt);
+                }
+                long start = System.nanoTime();
+                int rows = 0;
+                try (ResultSet rs = pstmt.executeQuery()) {
+                    while (rs.next()) {
+                        callback.onRow(rs);
+                        rows++;
                     }
+                }
+                statementLog.record(statement, pstmt, System.nanoTime() - start);
+                return rows;
+            });
 
-                    break;
-
-                } catch (SQLException e) {
-
-                    if (RETRY_SQL_STATE.equals(e.getSQLState())) {
-                        // Since this is a transaction retry error, we
-                        // roll back the transaction and sleep a
-                        // little before trying again.  Each time
-                        // through the loop we sleep for a little
-                        // longer than the last time
-                        // (A.K.A. exponential backoff).
-                        logger.warn(String.format("retryable exception occurred:\n    sql state = [%s]\n    message = [%s]\n    retry counter = %s\n", e.getSQLState(), e.getMessage(), retryCount));
-                        connection.rollback();
-                        retryCount++;
-                        int sleepMillis = (int)(Math.pow(2, retryCount) * 100) + rand.nextInt(100);
-                        logger.warn(String.format("Hit 40001 transaction retry error, sleeping %s milliseconds\n", sleepMillis));
-                        try {
-                            Thread.sleep(sleepMillis);
-                        } catch (InterruptedException ignored) {
-                            // Necessary to allow the Thread.sleep()
-                            // above so the retry loop can continue.
-                        }
+        } catch (SQLException e) {
+            InventoryMetrics.SQL_ABORTS.labels(statement).inc();
+            logger.error("runSQLQuery ERROR: { state => {}, cause => {}, message => {} }", e.getSQLState(), e.getCause(), e.getMessage());
+            rv = -1;
+        } finally {
+            timer.observeDuration();
+        }
 
-                    } else {
-                        throw e;
+        return rv;
+    }
+
+    /**
+     * Stream bytes from a channel into a COPY ... FROM STDIN statement,
+     * bufferSize bytes at a time, so the source never has to fit in
+     * memory.  COPY can't be replayed part way through, so a COPY that
+     * hits a transaction retry error isn't retried.
+     *
+     * @param copySql a COPY ... FROM STDIN statement.
+     *
+     * @param source the data to copy, in the format copySql names.
+     *
+     * @param bufferSize number of bytes to send at a time.
+     * @return Long Number of rows copied, or -1 if an error is thrown.
+     */
+    Long runCopyIn(String copySql, ReadableByteChannel source, int bufferSize) {
+
+        long rv;
+
+        String statement = InventoryMetrics.statementLabel(copySql);
+        Histogram.Timer timer = InventoryMetrics.SQL_DURATION.labels(statement).startTimer();
+        try (ConnectionPool.PooledConnection pooled = getPooledConnection()) {
+
+            Connection connection = pooled.getConnection();
+            // the server commits a COPY as it goes
+            connection.setAutoCommit(true);
+
+            long start = System.nanoTime();
+            CopyManager copyManager = connection.unwrap(PGConnection.class).getCopyAPI();
+            CopyIn copyIn = copyManager.copyIn(copySql);
+            try {
+                ByteBuffer buffer = ByteBuffer.allocate(bufferSize);
+                while (source.read(buffer) >= 0) {
+                    if (buffer.position() > 0) {
+                        copyIn.writeToCopy(buffer.array(), 0, buffer.position());
+                        buffer.clear();
                     }
                 }
+                if (buffer.position() > 0) {
+                    copyIn.writeToCopy(buffer.array(), 0, buffer.position());
+                }
+                rv = copyIn.endCopy();
+                statementLog.record(statement, copySql, System.nanoTime() - start);
+                InventoryMetrics.recordFirstWrite("database");
+            } finally {
+                if (copyIn.isActive()) {
+                    copyIn.cancelCopy();
+                }
             }
+
         } catch (SQLException e) {
-            logger.error(String.format("runSQLSelect ERROR: { state => %s, cause => %s, message => %s }\n", e.getSQLState(), e.getCause(), e.getMessage()));
+            InventoryMetrics.SQL_ABORTS.labels(statement).inc();
+            logger.error("runCopyIn ERROR: { state => {}, cause => {}, message => {} }", e.getSQLState(), e.getCause(), e.getMessage());
+            rv = -1;
+        } catch (IOException e) {
+            InventoryMetrics.SQL_ABORTS.labels(statement).inc();
+            logger.error("runCopyIn ERROR reading source: {}", e.getMessage());
+            rv = -1;
+        } finally {
+            timer.observeDuration();
         }
 
-        return rs;
+        return rv;
     }
 
     public void teardown() {
-        //nothing to tear down, but wanted to have the plumbing in place
+        if (pool != null) {
+            pool.close();
+        }
     }
 
 }
@@ -0,0 +1,383 @@
+package com.hatcherdev.inventorysystem.DAO;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * An append-only event log on local disk, standing in for the Kafka topic
+ * so the whole produce, consume and upsert pipeline can run on one box.
+ *
+ * Like a single Kafka partition, every record has a key, a value, a
+ * timestamp and an offset, and consumers keep a committed position per
+ * group.  The log is a directory of fixed-size, memory-mapped segment
+ * files, each named for the offset of its first record.  A record is
+ *
+ *   int    record length (not counting this int)
+ *   long   offset
+ *   long   timestamp (epoch millis)
+ *   int    key length
+ *   byte[] key
+ *   int    value length
+ *   byte[] value
+ *
+ * Segments are created full of zeros, so a record length of 0 marks the end
+ * of a segment's records.  The length is written after the rest of the
+ * record.  A reader in the writer's process also waits for the writer to
+ * publish the record's offset through a volatile field, which orders the
+ * record's bytes before it, so it never sees a partly written record.  A
+ * reader in another process only has the length to go on; the OS keeps
+ * the mapped pages coherent, and on the usual x86 hosts stores become
+ * visible in the order they were made, but that isn't promised on every
+ * platform.
+ *
+ * When a segment rolls, the oldest segments past maxSegments are deleted,
+ * the way Kafka's retention drops old log segments, whether or not every
+ * consumer has read them.  A reader whose next record has been deleted
+ * skips ahead to the oldest one left and logs how many it missed.
+ *
+ * Appends are synchronized; a log is meant to have one writer process at a
+ * time, though any number of readers.
+ */
+class FileEventLog implements AutoCloseable {
+
+    private static final Logger logger = LoggerFactory.getLogger(FileEventLog.class);
+
+    private static final String SEGMENT_SUFFIX = ".log";
+    private static final String POSITION_SUFFIX = ".position";
+    private static final int RECORD_HEADER_LENGTH = 8 + 8 + 4 + 4;
+
+    private final Path _directory;
+    private final int _segmentBytes;
+    private final int _maxSegments;
+
+    private MappedByteBuffer activeSegment;
+    private long activeBaseOffset;
+    private long nextOffset;
+    // the offset after the last record this instance appended, written
+    // once the record is complete; -1 until it appends one
+    private volatile long publishedEndOffset = -1;
+
+    /**
+     * Handles one record while polling.
+     */
+    @FunctionalInterface
+    interface RecordHandler {
+        void onRecord(long offset, long timestamp, byte[] key, byte[] value);
+    }
+
+    /**
+     * @param maxSegments segments to keep; 0 keeps them all.
+     */
+    FileEventLog(Path directory, int segmentBytes, int maxSegments) {
+        _directory = directory;
+        _segmentBytes = segmentBytes;
+        _maxSegments = Math.max(0, maxSegments);
+        try {
+            Files.createDirectories(directory);
+            List<Long> baseOffsets = listSegments();
+            if (baseOffsets.isEmpty()) {
+                openSegment(0);
+            } else {
+                // pick up where the last writer left off
+                openSegment(baseOffsets.get(baseOffsets.size() - 1));
+                recover();
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Unable to open event log at " + directory, e);
+        }
+    }
+
+    /**
+     * @return the offset of the appended record.
+     */
+    synchronized long append(byte[] key, byte[] value, long timestamp) {
+        int recordLength = RECORD_HEADER_LENGTH + key.length + value.length;
+        if (4 + recordLength > _segmentBytes) {
+            throw new IllegalArgumentException("Record of " + recordLength + " bytes doesn't fit in a segment");
+        }
+        if (activeSegment.remaining() < 4 + recordLength) {
+            try {
+                openSegment(nextOffset);
+            } catch (IOException e) {
+                throw new UncheckedIOException("Unable to roll event log segment", e);
+            }
+            deleteOldSegments();
+        }
+
+        long offset = nextOffset++;
+        int start = activeSegment.position();
+        activeSegment.position(start + 4);
+        activeSegment.putLong(offset);
+        activeSegment.putLong(timestamp);
+        activeSegment.putInt(key.length);
+        activeSegment.put(key);
+        activeSegment.putInt(value.length);
+        activeSegment.put(value);
+        activeSegment.putInt(start, recordLength);
+        publishedEndOffset = offset + 1;
+        return offset;
+    }
+
+    synchronized long getEndOffset() {
+        return nextOffset;
+    }
+
+    /**
+     * Write the active segment's changes through to disk.
+     */
+    synchronized void flush() {
+        activeSegment.force();
+    }
+
+    /**
+     * @return the group's committed position, i.e., the next offset it
+     * should read, or 0 if it hasn't committed one.
+     */
+    long readPosition(String group) {
+        Path positionFile = _directory.resolve(group + POSITION_SUFFIX);
+        if (!Files.exists(positionFile)) {
+            return 0;
+        }
+        try {
+            byte[] bytes = Files.readAllBytes(positionFile);
+            return bytes.length == 8 ? ByteBuffer.wrap(bytes).getLong() : 0;
+        } catch (IOException e) {
+            throw new UncheckedIOException("Unable to read position for " + group, e);
+        }
+    }
+
+    /**
+     * Save the group's position.  The file is replaced in one move, so a
+     * crash leaves either the old position or the new one.
+     */
+    void commitPosition(String group, long nextOffsetToRead) {
+        Path positionFile = _directory.resolve(group + POSITION_SUFFIX);
+        Path tempFile = _directory.resolve(group + POSITION_SUFFIX + ".tmp");
+        try {
+            Files.write(tempFile, ByteBuffer.allocate(8).putLong(nextOffsetToRead).array());
+            Files.move(tempFile, positionFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Unable to commit position for " + group, e);
+        }
+    }
+
+    Reader openReader(long fromOffset) {
+        return new Reader(fromOffset);
+    }
+
+    @Override
+    public synchronized void close() {
+        activeSegment.force();
+    }
+
+    private void openSegment(long baseOffset) throws IOException {
+        if (activeSegment != null) {
+            activeSegment.force();
+        }
+        activeSegment = mapSegment(baseOffset, FileChannel.MapMode.READ_WRITE);
+        activeBaseOffset = baseOffset;
+        nextOffset = baseOffset;
+    }
+
+    private void deleteOldSegments() {
+        if (_maxSegments == 0) {
+            return;
+        }
+        try {
+            List<Long> baseOffsets = listSegments();
+            // readers that have a deleted segment mapped keep reading it
+            for (int i = 0; i < baseOffsets.size() - _maxSegments; i++) {
+                Files.deleteIfExists(segmentPath(baseOffsets.get(i)));
+            }
+        } catch (IOException e) {
+            logger.warn("Unable to delete old event log segments: {}", e.toString());
+        }
+    }
+
+    private Path segmentPath(long baseOffset) {
+        return _directory.resolve(String.format("%020d%s", baseOffset, SEGMENT_SUFFIX));
+    }
+
+    // Find the end of the active segment's records.
+    private void recover() {
+        int position = 0;
+        while (position + 4 <= _segmentBytes) {
+            int recordLength = activeSegment.getInt(position);
+            if (recordLength <= 0 || position + 4 + recordLength > _segmentBytes) {
+                break;
+            }
+            nextOffset = activeSegment.getLong(position + 4) + 1;
+            position += 4 + recordLength;
+        }
+        activeSegment.position(position);
+        logger.info("Opened event log at {}, next offset {} (segment {})", _directory, nextOffset, activeBaseOffset);
+    }
+
+    private MappedByteBuffer mapSegment(long baseOffset, FileChannel.MapMode mode) throws IOException {
+        Path segmentFile = segmentPath(baseOffset);
+        if (mode == FileChannel.MapMode.READ_WRITE) {
+            try (FileChannel channel = FileChannel.open(segmentFile, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+                return channel.map(mode, 0, _segmentBytes);
+            }
+        }
+        try (FileChannel channel = FileChannel.open(segmentFile, StandardOpenOption.READ)) {
+            return channel.map(mode, 0, Math.min(channel.size(), _segmentBytes));
+        }
+    }
+
+    private List<Long> listSegments() throws IOException {
+        List<Long> baseOffsets = new ArrayList<>();
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(_directory, "*" + SEGMENT_SUFFIX)) {
+            for (Path file : files) {
+                String name = file.getFileName().toString();
+                try {
+                    baseOffsets.add(Long.parseLong(name.substring(0, name.length() - SEGMENT_SUFFIX.length())));
+                } catch (NumberFormatException e) {
+                    logger.warn("Ignoring unexpected file in event log: {}", file);
+                }
+            }
+        }
+        Collections.sort(baseOffsets);
+        return baseOffsets;
+    }
+
+    /**
+     * Reads records in offset order from a starting offset.  Each reader
+     * belongs to one thread.
+     */
+    class Reader {
+
+        private MappedByteBuffer segment;
+        private long segmentBaseOffset = -1;
+        private long position;
+
+        private Reader(long fromOffset) {
+            seek(fromOffset);
+        }
+
+        /**
+         * Start reading at the given offset again, e.g., to re-read records
+         * that couldn't be processed.
+         */
+        void seek(long offset) {
+            position = offset;
+            segment = null;
+            segmentBaseOffset = -1;
+        }
+
+        /**
+         * @return the next offset this reader will return.
+         */
+        long position() {
+            return position;
+        }
+
+        /**
+         * Hand up to maxRecords records to the handler.
+         *
+         * @return the number of records read; 0 means there are no new
+         * records yet.
+         */
+        int poll(int maxRecords, RecordHandler handler) {
+            // read before the records, so everything the writer in this
+            // process published up to here is visible
+            long publishedEnd = publishedEndOffset;
+            int read = 0;
+            while (read < maxRecords) {
+                if (publishedEnd >= 0 && position >= publishedEnd) {
+                    break;
+                }
+                if (segment == null && !openSegmentFor(position)) {
+                    break;
+                }
+                int recordLength = segment.remaining() >= 4 ? segment.getInt(segment.position()) : 0;
+                if (recordLength <= 0) {
+                    // the end of this segment's records: move on if the
+                    // writer has rolled to a newer segment
+                    if (!nextSegmentExists()) {
+                        break;
+                    }
+                    // the writer may have added a last record just before rolling
+                    if (segment.remaining() >= 4 && segment.getInt(segment.position()) > 0) {
+                        continue;
+                    }
+                    segment = null;
+                    continue;
+                }
+                int recordStart = segment.position();
+                long offset = segment.getLong(recordStart + 4);
+                if (offset < position) {
+                    // before the offset we were asked to start from
+                    segment.position(recordStart + 4 + recordLength);
+                    continue;
+                }
+                segment.position(recordStart + 4 + 8);
+                long timestamp = segment.getLong();
+                byte[] key = new byte[segment.getInt()];
+                segment.get(key);
+                byte[] value = new byte[segment.getInt()];
+                segment.get(value);
+
+                handler.onRecord(offset, timestamp, key, value);
+                position = offset + 1;
+                read++;
+            }
+            return read;
+        }
+
+        private boolean openSegmentFor(long offset) {
+            try {
+                List<Long> baseOffsets = listSegments();
+                long baseOffset = -1;
+                for (long candidate : baseOffsets) {
+                    if (candidate <= offset) {
+                        baseOffset = candidate;
+                    }
+                }
+                if (baseOffset < 0) {
+                    if (baseOffsets.isEmpty()) {
+                        return false;
+                    }
+                    // retention has deleted the segment the offset was in
+                    baseOffset = baseOffsets.get(0);
+                    logger.warn("Event log records {} to {} were deleted before they were read, skipping ahead", offset, baseOffset - 1);
+                    position = baseOffset;
+                }
+                // records before the one we want are skipped by poll()
+                segment = mapSegment(baseOffset, FileChannel.MapMode.READ_ONLY);
+                segmentBaseOffset = baseOffset;
+                return true;
+            } catch (IOException e) {
+                throw new UncheckedIOException("Unable to read event log at " + _directory, e);
+            }
+        }
+
+        private boolean nextSegmentExists() {
+            try {
+                for (long baseOffset : listSegments()) {
+                    if (baseOffset > segmentBaseOffset) {
+                        return true;
+                    }
+                }
+                return false;
+            } catch (IOException e) {
+                throw new UncheckedIOException("Unable to read event log at " + _directory, e);
+            }
+        }
+    }
+
+}
@@ -0,0 +1,155 @@
+package com.hatcherdev.inventorysystem.DAO;
+
+import com.hatcherdev.inventorysystem.config.AppConfig;
+import com.hatcherdev.inventorysystem.metrics.InventoryMetrics;
+import com.hatcherdev.inventorysystem.objects.InventoryEvent;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Reads inventory events from the local file event log and applies them
+ * to the database, the same way a worker of InventoryEventConsumerEngine
+ * does for a Kafka partition: events are summed per key into a window, the
+ * window is written as one batch of upserts, and the group's position is
+ * committed only once the write succeeds.  The log has a single partition,
+ * so there's a single worker.
+ */
+class FileEventLogConsumer {
+
+    private static final Logger logger = LoggerFactory.getLogger(FileEventLogConsumer.class);
+
+    private final InventoryDAO _inventoryDAO;
+    private final FileEventLog _eventLog;
+    private final String _group;
+
+    private final long _pollTimeoutMillis;
+    private final int _maxIdlePolls;
+    private final int _maxPollRecords;
+    private final long _retryBackoffMillis;
+    private final long _windowMillis;
+    private final int _windowRecords;
+
+    private final InventoryDeltaBatch window = new InventoryDeltaBatch();
+    // every record is decoded into this one event
+    private final InventoryEvent event = new InventoryEvent();
+    private final AtomicLong processedCount = new AtomicLong();
+    // a consumer runs once, so stop() works even before run() starts
+    private volatile boolean running = true;
+
+    private FileEventLog.Reader reader;
+    private long windowFirstOffset;
+    private long windowStartMillis;
+    private int windowRecordCount;
+
+    FileEventLogConsumer(InventoryDAO inventoryDAO, FileEventLog eventLog, String group) {
+        _inventoryDAO = inventoryDAO;
+        _eventLog = eventLog;
+        _group = group;
+        _pollTimeoutMillis = AppConfig.getLong("kafka.consumer.pollTimeoutMillis", 1000);
+        _maxIdlePolls = Math.max(1, AppConfig.getInt("kafka.consumer.maxIdlePolls", 3));
+        _maxPollRecords = Math.max(1, AppConfig.getInt("kafka.consumer.maxPollRecords", 2000));
+        _retryBackoffMillis = AppConfig.getLong("kafka.consumer.retryBackoffMillis", 1000);
+        _windowMillis = AppConfig.getLong("kafka.consumer.aggregation.windowMillis", 1000);
+        _windowRecords = Math.max(1, AppConfig.getInt("kafka.consumer.aggregation.windowRecords", 10000));
+    }
+
+    /**
+     * Process events until stop() is called or, when not continuous, until
+     * kafka.consumer.maxIdlePolls polls in a row find nothing new.
+     */
+    void run(boolean continuous) {
+
+        reader = _eventLog.openReader(_eventLog.readPosition(_group));
+        logger.info("Processing inventory events from the file event log, starting at offset {}", reader.position());
+
+        int idlePolls = 0;
+        while (running) {
+            int read = reader.poll(_maxPollRecords, this::addToWindow);
+
+            if (read == 0) {
+                flushWindow();
+                idlePolls++;
+                if (!continuous && idlePolls >= _maxIdlePolls) {
+                    break;
+                }
+                sleep(_pollTimeoutMillis);
+                continue;
+            }
+            idlePolls = 0;
+            InventoryMetrics.EVENTS_CONSUMED.inc(read);
+            InventoryMetrics.CONSUMER_LAG.labels("file", "0").set(Math.max(0, _eventLog.getEndOffset() - reader.position()));
+
+            if (windowRecordCount >= _windowRecords
+                    || System.currentTimeMillis() - windowStartMillis >= _windowMillis) {
+                flushWindow();
+            }
+        }
+
+        flushWindow();
+    }
+
+    void stop() {
+        running = false;
+    }
+
+    long getProcessedCount() {
+        return processedCount.get();
+    }
+
+    private void addToWindow(long offset, long timestamp, byte[] key, byte[] value) {
+        if (windowRecordCount == 0) {
+            windowStartMillis = System.currentTimeMillis();
+            windowFirstOffset = offset;
+        }
+        if (InventoryEventCodec.decode(key, value, timestamp, event)) {
+            window.add(event);
+        } else {
+            logger.warn("Skipping malformed inventory event at offset {}", offset);
+        }
+        windowRecordCount++;
+    }
+
+    private void flushWindow() {
+
+        if (windowRecordCount == 0) {
+            return;
+        }
+
+        InventoryMetrics.BATCH_SIZE.labels("consumer_window_events").observe(windowRecordCount);
+        int result = _inventoryDAO.storeInventoryChanges(window);
+        if (result < 0) {
+            // read the events again rather than skipping them
+            logger.error("Error storing {} aggregated inventory changes, retrying from offset {}", window.size(), windowFirstOffset);
+            reader.seek(windowFirstOffset);
+            clearWindow();
+            sleep(_retryBackoffMillis);
+            return;
+        }
+
+        _eventLog.commitPosition(_group, reader.position());
+
+        long processed = processedCount.addAndGet(windowRecordCount);
+        if (logger.isDebugEnabled()) {
+            logger.debug("Inventory events processed - {} ({} events written as {} upserts)", processed, windowRecordCount, window.size());
+        }
+        clearWindow();
+    }
+
+    private void clearWindow() {
+        window.clear();
+        windowRecordCount = 0;
+    }
+
+    private void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            running = false;
+        }
+    }
+
+}
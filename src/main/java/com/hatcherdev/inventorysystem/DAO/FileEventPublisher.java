@@ -0,0 +1,79 @@
+package com.hatcherdev.inventorysystem.DAO;
+
+import com.hatcherdev.inventorysystem.metrics.InventoryMetrics;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Sends inventory events to the local file event log, encoded the same way
+ * as for the Kafka topic.
+ */
+class FileEventPublisher implements InventoryEventSink {
+
+    private static final Logger logger = LoggerFactory.getLogger(FileEventPublisher.class);
+
+    private final FileEventLog _eventLog;
+
+    // same scheme as the Kafka publisher: a random id in the high 24 bits
+    // and a sequence number in the low 40 bits
+    private final long eventIdBase = ((long) new Random().nextInt(1 << 24)) << 40;
+    private final AtomicLong eventSequence = new AtomicLong();
+
+    private final AtomicLong sentCount = new AtomicLong();
+    private final AtomicLong failedCount = new AtomicLong();
+
+    FileEventPublisher(FileEventLog eventLog) {
+        _eventLog = eventLog;
+    }
+
+    @Override
+    public void send(int storeNumber, String productSku, int inventoryChange) {
+        long eventId = eventIdBase | (eventSequence.incrementAndGet() & 0xFFFFFFFFFFL);
+        long timestamp = System.currentTimeMillis();
+        try {
+            _eventLog.append(InventoryEventCodec.encodeKey(storeNumber, productSku),
+                    InventoryEventCodec.encodeValue(storeNumber, productSku, inventoryChange, timestamp, eventId),
+                    timestamp);
+        } catch (RuntimeException e) {
+            failedCount.incrementAndGet();
+            InventoryMetrics.EVENTS_PRODUCE_FAILED.inc();
+            logger.error("Failed to append inventory event for {}|{}: {}", storeNumber, productSku, e.toString());
+            return;
+        }
+        sentCount.incrementAndGet();
+        InventoryMetrics.EVENTS_PRODUCED.inc();
+        InventoryMetrics.recordFirstWrite("file");
+    }
+
+    @Override
+    public long getSentCount() {
+        return sentCount.get();
+    }
+
+    @Override
+    public long getFailedCount() {
+        return failedCount.get();
+    }
+
+    @Override
+    public void flush() {
+        _eventLog.flush();
+    }
+
+    @Override
+    public void close() {
+        _eventLog.close();
+
+        long failed = failedCount.get();
+        if (failed > 0) {
+            logger.error("Inventory events appended: {}, failed: {}", sentCount.get(), failed);
+        } else {
+            logger.info("Inventory events appended: {}", sentCount.get());
+        }
+    }
+
+}
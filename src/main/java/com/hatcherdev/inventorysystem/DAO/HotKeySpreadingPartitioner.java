@@ -0,0 +1,177 @@
+package com.hatcherdev.inventorysystem.DAO;
+
+import org.apache.kafka.clients.producer.Partitioner;
+import org.apache.kafka.clients.producer.internals.DefaultPartitioner;
+import org.apache.kafka.common.Cluster;
+import org.apache.kafka.common.PartitionInfo;
+import org.apache.kafka.common.utils.Utils;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+/**
+ * Places keys on a consistent-hash ring of partitions, and spreads the
+ * events of hot keys over several partitions instead of one.
+ *
+ * Each partition has kafka.partitioner.virtualNodes points on the ring,
+ * and a key goes to the partition of the first point at or after its
+ * hash.  Adding partitions only moves the keys that land on the new
+ * partitions' points, unlike hash-mod-N, which moves nearly all of them.
+ *
+ * A key is hot when it's seen more than
+ * kafka.partitioner.hotKeyEventsPerSecond times in a second, counted in a
+ * small table of counters indexed by key hash, so occasionally a cold key
+ * shares a counter with a hot one and gets spread too.  A hot key's events
+ * go to a random one of the kafka.partitioner.hotKeySpread distinct
+ * partitions that follow its hash on the ring.
+ *
+ * Spreading a key gives up Kafka's per-key ordering.  Inventory deltas add
+ * up the same in any order, and the publisher numbers each key's events
+ * so consumers can still spot duplicates and gaps.
+ *
+ * The settings are read from the producer's config, where the publisher
+ * copies them from the app config.  Events without a key, or sent before
+ * the topic has any partitions, are left to Kafka's default partitioner.
+ */
+public class HotKeySpreadingPartitioner implements Partitioner {
+
+    static final String VIRTUAL_NODES_CONFIG = "kafka.partitioner.virtualNodes";
+    static final String HOT_KEY_EVENTS_PER_SECOND_CONFIG = "kafka.partitioner.hotKeyEventsPerSecond";
+    static final String HOT_KEY_SPREAD_CONFIG = "kafka.partitioner.hotKeySpread";
+
+    private static final int COUNTER_SLOTS = 4096;
+
+    private final DefaultPartitioner defaultPartitioner = new DefaultPartitioner();
+
+    private int virtualNodes;
+    private int hotKeySpread;
+    private int hotKeyEventsPerSecond;
+
+    private final AtomicIntegerArray keyCounts = new AtomicIntegerArray(COUNTER_SLOTS);
+    private volatile long countWindowStart = System.nanoTime();
+
+    private volatile Ring ring;
+
+    @Override
+    public void configure(Map<String, ?> configs) {
+        defaultPartitioner.configure(configs);
+        virtualNodes = Math.max(1, getInt(configs, VIRTUAL_NODES_CONFIG, 64));
+        hotKeySpread = Math.max(1, getInt(configs, HOT_KEY_SPREAD_CONFIG, 4));
+        hotKeyEventsPerSecond = Math.max(1, getInt(configs, HOT_KEY_EVENTS_PER_SECOND_CONFIG, 1000));
+    }
+
+    private static int getInt(Map<String, ?> configs, String name, int defaultValue) {
+        Object value = configs.get(name);
+        if (value == null) {
+            return defaultValue;
+        }
+        if (value instanceof Number) {
+            return ((Number) value).intValue();
+        }
+        return Integer.parseInt(value.toString().trim());
+    }
+
+    @Override
+    public int partition(String topic, Object key, byte[] keyBytes, Object value, byte[] valueBytes, Cluster cluster) {
+        List<PartitionInfo> partitionInfos = cluster.partitionsForTopic(topic);
+        int partitionCount = partitionInfos == null ? 0 : partitionInfos.size();
+        if (keyBytes == null || partitionCount == 0) {
+            return defaultPartitioner.partition(topic, key, keyBytes, value, valueBytes, cluster);
+        }
+
+        Ring current = ring;
+        if (current == null || current.partitionCount != partitionCount) {
+            current = new Ring(partitionCount, virtualNodes);
+            ring = current;
+        }
+
+        int hash = Utils.murmur2(keyBytes);
+        int point = current.pointFor(hash);
+        if (hotKeySpread > 1 && isHot(hash)) {
+            return current.partitionNear(point, ThreadLocalRandom.current().nextInt(Math.min(hotKeySpread, partitionCount)));
+        }
+        return current.partitions[point];
+    }
+
+    private boolean isHot(int hash) {
+        long now = System.nanoTime();
+        if (now - countWindowStart > 1_000_000_000L) {
+            // a racing thread may clear a few counts twice; that only
+            // delays spotting a hot key by a moment
+            countWindowStart = now;
+            for (int i = 0; i < COUNTER_SLOTS; i++) {
+                keyCounts.set(i, 0);
+            }
+        }
+        return keyCounts.incrementAndGet(hash & (COUNTER_SLOTS - 1)) > hotKeyEventsPerSecond;
+    }
+
+    @Override
+    public void close() {
+        defaultPartitioner.close();
+    }
+
+    private static class Ring {
+
+        private final int partitionCount;
+        private final int[] hashes;
+        private final int[] partitions;
+
+        Ring(int partitionCount, int virtualNodes) {
+            this.partitionCount = partitionCount;
+            int size = partitionCount * virtualNodes;
+            long[] points = new long[size];
+            int i = 0;
+            for (int partition = 0; partition < partitionCount; partition++) {
+                for (int node = 0; node < virtualNodes; node++) {
+                    int hash = Utils.murmur2(("partition-" + partition + "-" + node).getBytes());
+                    // sort by hash, carrying the partition in the low bits
+                    points[i++] = ((long) hash << 32) | partition;
+                }
+            }
+            Arrays.sort(points);
+            hashes = new int[size];
+            partitions = new int[size];
+            for (i = 0; i < size; i++) {
+                hashes[i] = (int) (points[i] >> 32);
+                partitions[i] = (int) points[i];
+            }
+        }
+
+        // index of the first point at or after the hash, wrapping around
+        int pointFor(int hash) {
+            int index = Arrays.binarySearch(hashes, hash);
+            if (index < 0) {
+                index = -index - 1;
+            }
+            return index == hashes.length ? 0 : index;
+        }
+
+        // the nth distinct partition found walking the ring from a point
+        int partitionNear(int point, int n) {
+            int found = -1;
+            int[] seen = new int[n + 1];
+            for (int step = 0; step < hashes.length; step++) {
+                int partition = partitions[(point + step) % hashes.length];
+                boolean repeat = false;
+                for (int j = 0; j <= found; j++) {
+                    if (seen[j] == partition) {
+                        repeat = true;
+                        break;
+                    }
+                }
+                if (!repeat) {
+                    seen[++found] = partition;
+                    if (found == n) {
+                        return partition;
+                    }
+                }
+            }
+            return partitions[point];
+        }
+    }
+
+}
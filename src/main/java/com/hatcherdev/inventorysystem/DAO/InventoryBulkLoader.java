@@ -0,0 +1,418 @@
+package com.hatcherdev.inventorysystem.DAO;
+
+import com.hatcherdev.inventorysystem.objects.Inventory;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Stream;
+
+/**
+ * Loads the inventory table from a CSV file and writes it back out to one.
+ *
+ * The file format is a header line followed by one
+ * store_no,product_sku,inventory_count line per row, which is what
+ * export writes and what COPY ... WITH CSV HEADER reads.  SKUs are quoted
+ * as RFC 4180 says when they need to be: a SKU with a comma, a quote or a
+ * line break in it is written in double quotes, with its quotes doubled,
+ * and so is an empty SKU, which COPY would otherwise read as NULL.  Files
+ * are read and written a buffer at a time, never whole.
+ *
+ * There are two ways to import: "copy" streams the file's bytes straight
+ * into COPY FROM STDIN without parsing them, and "upsert" parses the rows
+ * and writes them with multi-row upserts from several threads.  COPY is
+ * the fastest way in but fails on rows that already exist; upsert
+ * overwrites them with the file's counts.
+ */
+class InventoryBulkLoader {
+
+    private static final Logger logger = LoggerFactory.getLogger(InventoryBulkLoader.class);
+
+    static final String CSV_HEADER = "store_no,product_sku,inventory_count";
+
+    private static final String COPY_SQL = "COPY inventory ( store_no, product_sku, inventory_count ) FROM STDIN WITH CSV HEADER;";
+
+    private final InventoryDAO _inventoryDAO;
+    private final int _bufferSize;
+    private final int _batchSize;
+    private final int _writerCount;
+    private final Map<Integer, String> upsertSQLByRowCount = new ConcurrentHashMap<>();
+
+    InventoryBulkLoader(InventoryDAO inventoryDAO, int bufferSize, int batchSize, int writerCount) {
+        _inventoryDAO = inventoryDAO;
+        _bufferSize = Math.max(4096, bufferSize);
+        _batchSize = Math.max(1, batchSize);
+        _writerCount = Math.max(1, writerCount);
+    }
+
+    /**
+     * @return the number of rows copied, or -1 on error.
+     */
+    long importWithCopy(Path file) {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            return _inventoryDAO.runCopyIn(COPY_SQL, channel, _bufferSize);
+        } catch (IOException e) {
+            logger.error("Unable to read {}: {}", file, e.getMessage());
+            return -1;
+        }
+    }
+
+    /**
+     * @return the number of rows written, or -1 on error.
+     */
+    long importWithUpserts(Path file) {
+
+        ExecutorService writers = Executors.newFixedThreadPool(_writerCount);
+        // a couple of batches queued per writer keeps them busy without
+        // reading far ahead of the database
+        Semaphore inFlight = new Semaphore(_writerCount * 2);
+        AtomicLong rowsWritten = new AtomicLong();
+        AtomicBoolean failed = new AtomicBoolean();
+
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+
+            RowBatch[] batch = {new RowBatch(_batchSize)};
+            boolean read = readRows(channel, (storeNumber, productSku, inventoryCount) -> {
+                batch[0].add(storeNumber, productSku, inventoryCount);
+                if (batch[0].size() == _batchSize) {
+                    submit(writers, inFlight, batch[0], rowsWritten, failed);
+                    batch[0] = new RowBatch(_batchSize);
+                }
+                return !failed.get();
+            });
+            if (batch[0].size() > 0 && !failed.get()) {
+                submit(writers, inFlight, batch[0], rowsWritten, failed);
+            }
+            if (!read) {
+                failed.set(true);
+            }
+
+        } catch (IOException e) {
+            logger.error("Unable to read {}: {}", file, e.getMessage());
+            failed.set(true);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            failed.set(true);
+        } finally {
+            writers.shutdown();
+            try {
+                writers.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        return failed.get() ? -1 : rowsWritten.get();
+    }
+
+    private void submit(ExecutorService writers, Semaphore inFlight, RowBatch batch, AtomicLong rowsWritten, AtomicBoolean failed) throws InterruptedException {
+        inFlight.acquire();
+        writers.execute(() -> {
+            try {
+                int result = _inventoryDAO.runSQL(getUpsertSQL(batch.size()), batch::bind);
+                _inventoryDAO.afterDirectWrite(batch.keys());
+                if (result < 0) {
+                    failed.set(true);
+                } else {
+                    rowsWritten.addAndGet(batch.size());
+                }
+            } finally {
+                inFlight.release();
+            }
+        });
+    }
+
+    // Unlike the inventory change upsert, this sets the count to the
+    // file's value rather than adding to it.
+    private String getUpsertSQL(int rowCount) {
+        return upsertSQLByRowCount.computeIfAbsent(rowCount, n -> {
+            StringBuilder sb = new StringBuilder("INSERT INTO inventory ( store_no, product_sku, inventory_count ) VALUES ");
+            for (int i = 0; i < n; i++) {
+                if (i > 0) {
+                    sb.append(", ");
+                }
+                sb.append("( ?, ?, ? )");
+            }
+            sb.append(" ON CONFLICT ( store_no, product_sku ) " +
+                    "DO UPDATE SET " +
+                    "  inventory_count = excluded.inventory_count, " +
+                    "  last_updated = NOW();");
+            return sb.toString();
+        });
+    }
+
+    /**
+     * @return the number of rows written, or -1 on error.
+     */
+    long export(Path file) {
+        long rows = 0;
+        try (BufferedWriter writer = Files.newBufferedWriter(file, StandardCharsets.UTF_8);
+             Stream<Inventory> inventoryStream = _inventoryDAO.streamInventoryRecords()) {
+
+            writer.write(CSV_HEADER);
+            writer.write('\n');
+
+            for (Inventory inventory : (Iterable<Inventory>) inventoryStream::iterator) {
+                writer.write(Integer.toString(inventory.getStoreNumber()));
+                writer.write(',');
+                writeCsvField(writer, inventory.getProductSku());
+                writer.write(',');
+                writer.write(Integer.toString(inventory.getInventoryCount()));
+                writer.write('\n');
+                rows++;
+            }
+
+        } catch (IOException e) {
+            logger.error("Unable to write {}: {}", file, e.getMessage());
+            return -1;
+        } catch (RuntimeException e) {
+            logger.error("Unable to read inventory for export: {}", e.getMessage());
+            return -1;
+        }
+        return rows;
+    }
+
+    private static void writeCsvField(BufferedWriter writer, String value) throws IOException {
+        boolean quote = value.isEmpty();
+        for (int i = 0; i < value.length() && !quote; i++) {
+            char c = value.charAt(i);
+            quote = c == ',' || c == '"' || c == '\n' || c == '\r';
+        }
+        if (!quote) {
+            writer.write(value);
+            return;
+        }
+        writer.write('"');
+        writer.write(value.replace("\"", "\"\""));
+        writer.write('"');
+    }
+
+    @FunctionalInterface
+    private interface CsvRowHandler {
+        /**
+         * @return false to stop reading.
+         */
+        boolean onRow(int storeNumber, String productSku, int inventoryCount) throws InterruptedException;
+    }
+
+    /**
+     * Parse the CSV a buffer at a time.  The header line, blank lines and
+     * lines that don't parse are skipped; the last get logged.  A line
+     * break inside double quotes is part of the field, not the end of the
+     * row.
+     *
+     * @return false if the handler asked to stop.
+     */
+    private boolean readRows(FileChannel channel, CsvRowHandler handler) throws IOException, InterruptedException {
+
+        ByteBuffer buffer = ByteBuffer.allocate(_bufferSize);
+        byte[] line = new byte[256];
+        int lineLength = 0;
+        long lineNumber = 0;
+        // a doubled quote inside a quoted field flips this twice
+        boolean inQuotes = false;
+
+        while (true) {
+            int read = channel.read(buffer);
+            if (read < 0) {
+                break;
+            }
+            buffer.flip();
+            while (buffer.hasRemaining()) {
+                byte b = buffer.get();
+                if (b == '"') {
+                    inQuotes = !inQuotes;
+                }
+                if (b == '\n' && !inQuotes) {
+                    lineNumber++;
+                    if (!parseLine(line, lineLength, lineNumber, handler)) {
+                        return false;
+                    }
+                    lineLength = 0;
+                } else {
+                    if (lineLength == line.length) {
+                        line = Arrays.copyOf(line, line.length * 2);
+                    }
+                    line[lineLength++] = b;
+                }
+            }
+            buffer.clear();
+        }
+
+        // the last line might not end with a newline
+        return lineLength == 0 || parseLine(line, lineLength, lineNumber + 1, handler);
+    }
+
+    private static boolean parseLine(byte[] line, int length, long lineNumber, CsvRowHandler handler) throws InterruptedException {
+        if (length > 0 && line[length - 1] == '\r') {
+            length--;
+        }
+        if (length == 0) {
+            return true;
+        }
+
+        int firstComma = fieldEnd(line, 0, length);
+        int secondComma = firstComma == length ? -1 : fieldEnd(line, firstComma + 1, length);
+        if (secondComma < 0 || secondComma == length) {
+            logger.warn("Skipping line {}: expected 3 fields", lineNumber);
+            return true;
+        }
+
+        long storeNumber = parseInt(line, 0, firstComma);
+        long inventoryCount = parseInt(line, secondComma + 1, length);
+        if (storeNumber == Long.MIN_VALUE || inventoryCount == Long.MIN_VALUE) {
+            if (lineNumber > 1) {
+                logger.warn("Skipping line {}: store_no and inventory_count must be integers", lineNumber);
+            }
+            // otherwise it's the header
+            return true;
+        }
+
+        String productSku = unquote(line, firstComma + 1, secondComma);
+
+        return handler.onRow((int) storeNumber, productSku, (int) inventoryCount);
+    }
+
+    // the index of the comma ending the field that starts at from, or to
+    // if it's the last field; commas inside double quotes don't count
+    private static int fieldEnd(byte[] bytes, int from, int to) {
+        boolean inQuotes = false;
+        for (int i = from; i < to; i++) {
+            if (bytes[i] == '"') {
+                inQuotes = !inQuotes;
+            } else if (bytes[i] == ',' && !inQuotes) {
+                return i;
+            }
+        }
+        return to;
+    }
+
+    // A field's text, without its quotes and with doubled quotes inside
+    // them made single.
+    private static String unquote(byte[] bytes, int from, int to) {
+        if (indexOf(bytes, from, to, (byte) '"') < 0) {
+            return new String(bytes, from, to - from, StandardCharsets.UTF_8);
+        }
+        byte[] text = new byte[to - from];
+        int length = 0;
+        boolean inQuotes = false;
+        for (int i = from; i < to; i++) {
+            if (bytes[i] != '"') {
+                text[length++] = bytes[i];
+            } else if (inQuotes && i + 1 < to && bytes[i + 1] == '"') {
+                text[length++] = '"';
+                i++;
+            } else {
+                inQuotes = !inQuotes;
+            }
+        }
+        return new String(text, 0, length, StandardCharsets.UTF_8);
+    }
+
+    private static int indexOf(byte[] bytes, int from, int to, byte b) {
+        for (int i = from; i < to; i++) {
+            if (bytes[i] == b) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    // returns Long.MIN_VALUE if the bytes aren't an int
+    private static long parseInt(byte[] bytes, int from, int to) {
+        if (from >= to) {
+            return Long.MIN_VALUE;
+        }
+        boolean negative = bytes[from] == '-';
+        int i = negative ? from + 1 : from;
+        if (i == to) {
+            return Long.MIN_VALUE;
+        }
+        long value = 0;
+        for (; i < to; i++) {
+            int digit = bytes[i] - '0';
+            if (digit < 0 || digit > 9) {
+                return Long.MIN_VALUE;
+            }
+            value = value * 10 + digit;
+            if (value > (long) Integer.MAX_VALUE + 1) {
+                return Long.MIN_VALUE;
+            }
+        }
+        value = negative ? -value : value;
+        return value < Integer.MIN_VALUE || value > Integer.MAX_VALUE ? Long.MIN_VALUE : value;
+    }
+
+    // One upsert's rows.  A multi-row upsert can't touch the same row
+    // twice, so a key that shows up again replaces the earlier count.
+    private static class RowBatch {
+
+        private final int[] storeNumbers;
+        private final String[] productSkus;
+        private final int[] inventoryCounts;
+        private final Map<InventoryKey, Integer> indexByKey;
+        private int size;
+
+        RowBatch(int capacity) {
+            storeNumbers = new int[capacity];
+            productSkus = new String[capacity];
+            inventoryCounts = new int[capacity];
+            indexByKey = new HashMap<>(capacity * 2);
+        }
+
+        void add(int storeNumber, String productSku, int inventoryCount) {
+            Integer existing = indexByKey.putIfAbsent(new InventoryKey(storeNumber, productSku), size);
+            if (existing != null) {
+                inventoryCounts[existing] = inventoryCount;
+                return;
+            }
+            storeNumbers[size] = storeNumber;
+            productSkus[size] = productSku;
+            inventoryCounts[size] = inventoryCount;
+            size++;
+        }
+
+        int size() {
+            return size;
+        }
+
+        // the rows' keys, for invalidating cached counts
+        InventoryDeltaBatch keys() {
+            InventoryDeltaBatch keys = new InventoryDeltaBatch();
+            for (int i = 0; i < size; i++) {
+                keys.add(storeNumbers[i], productSkus[i], 0);
+            }
+            return keys;
+        }
+
+        void bind(PreparedStatement pstmt) throws SQLException {
+            int place = 1;
+            for (int i = 0; i < size; i++) {
+                pstmt.setInt(place++, storeNumbers[i]);
+                pstmt.setString(place++, productSkus[i]);
+                pstmt.setInt(place++, inventoryCounts[i]);
+            }
+        }
+    }
+
+}
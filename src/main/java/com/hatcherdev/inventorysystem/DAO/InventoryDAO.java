@@ -1,46 +1,92 @@
 package com.hatcherdev.inventorysystem.DAO;
 
+import com.hatcherdev.inventorysystem.config.AppConfig;
+import com.hatcherdev.inventorysystem.metrics.InventoryMetrics;
 import com.hatcherdev.inventorysystem.objects.Inventory;
+import com.hatcherdev.inventorysystem.objects.InventoryColumns;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import javax.sql.DataSource;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
-import org.apache.kafka.clients.producer.*;
-import org.apache.kafka.clients.consumer.*;
-import org.apache.kafka.common.serialization.*;
 
 public class InventoryDAO extends DAOBase {
 
     private static final Logger logger = LoggerFactory.getLogger(InventoryDAO.class);
-    private final Random rand = new Random();
 
     private final int _defaultStoreNumber;
 
     //pass this in or move this functionality to bizlogic class
-    private final StorageDestination _storageDestination; //DB or Kafka
+    private final StorageDestination _storageDestination; //DB, Kafka or the local file event log
 
-    //TODO: pull these in from configs
-    private final String TOPIC = "inventory-events";
-    private final String BOOTSTRAP_SERVERS = "localhost:9092";
+    private final String _topic;
+    private final String _bootstrapServers;
 
-    private final Producer<String, String> producer;
-    private final Consumer<String, String> consumer;
+    private final int _batchSize;
+    private final int _transactionSize;
+    private final boolean _batchByStore;
+    private final Map<Integer, String> upsertSQLByRowCount = new ConcurrentHashMap<>();
+
+    // clients are only created once the destination that needs them is used
+    private volatile InventoryEventSink publisher;
+    private volatile FileEventLog fileEventLog;
+    private volatile InventoryEventConsumerEngine consumerEngine;
+    private volatile FileEventLogConsumer fileEventLogConsumer;
+    private volatile boolean stopRequested;
+    private final WriteBehindInventoryCache writeBehindCache;
+    private final InventoryLookupCache lookupCache;
 
     public enum StorageDestination {
         DATABASE,
-        KAFKA
+        KAFKA,
+        // an append-only log on local disk that stands in for the Kafka topic
+        FILE
     }
 
     public InventoryDAO(StorageDestination storageDestination, int defaultStoreNumber) {
+        this(storageDestination, defaultStoreNumber, null);
+    }
+
+    /**
+     * @param dataSource the data source to write to, or null to connect to
+     * the cluster.
+     */
+    InventoryDAO(StorageDestination storageDestination, int defaultStoreNumber, DataSource dataSource) {
+        super(dataSource);
         _storageDestination = storageDestination;
         _defaultStoreNumber = defaultStoreNumber;
-        producer = createProducer();
-        consumer = createConsumer();
+        _topic = AppConfig.getString("kafka.topic", "inventory-events");
+        _bootstrapServers = AppConfig.getString("kafka.bootstrapServers", "localhost:9092");
+        _batchSize = Math.max(1, AppConfig.getInt("inventory.batch.size", 100));
+        _transactionSize = Math.max(1, AppConfig.getInt("inventory.transaction.size", 1));
+        _batchByStore = AppConfig.getBoolean("inventory.batch.byStore", true);
+        if (storageDestination == StorageDestination.DATABASE && AppConfig.getBoolean("inventory.writeBehind.enabled", false)) {
+            writeBehindCache = new WriteBehindInventoryCache(this,
+                    AppConfig.getInt("inventory.writeBehind.maxEntries", 1000000),
+                    AppConfig.getInt("inventory.writeBehind.flushThreshold", 10000),
+                    AppConfig.getLong("inventory.writeBehind.flushIntervalMillis", 1000),
+                    AppConfig.getLong("inventory.writeBehind.reloadMillis", 5000));
+        } else {
+            writeBehindCache = null;
+        }
+        if (AppConfig.getBoolean("inventory.lookupCache.enabled", true)) {
+            lookupCache = new InventoryLookupCache(
+                    AppConfig.getInt("inventory.lookupCache.maxEntries", 100000),
+                    AppConfig.getLong("inventory.lookupCache.ttlMillis", 5000));
+        } else {
+            lookupCache = null;
+        }
     }
 
     public void storeInventoryChange(Integer storeNumber, String productSKU, Integer inventoryChange) {
@@ -56,7 +102,10 @@ public class InventoryDAO extends DAOBase {
         );
         */
 
-        if (_storageDestination == StorageDestination.DATABASE) {
+        if (_storageDestination == StorageDestination.DATABASE && writeBehindCache != null) {
+            writeBehindCache.add(storeNumber, productSKU, inventoryChange);
+            invalidateLookup(storeNumber, productSKU);
+        } else if (_storageDestination == StorageDestination.DATABASE) {
             String sql = "INSERT INTO inventory ( store_no, product_sku, inventory_count ) " +
                     "VALUES ( ?, ?, ? ) " +
                     "ON CONFLICT ( store_no, product_sku ) " +
@@ -65,28 +114,17 @@ public class InventoryDAO extends DAOBase {
                     "  last_updated = NOW(), " +
                     "  update_count = inventory.update_count + 1;";
 
-            int result = runSQL(sql, storeNumber.toString(), productSKU, inventoryChange.toString());
+            int result = runSQL(sql, pstmt -> {
+                pstmt.setInt(1, storeNumber);
+                pstmt.setString(2, productSKU);
+                pstmt.setInt(3, inventoryChange);
+            });
+            invalidateLookup(storeNumber, productSKU);
             if (result == 0) {
                 logger.warn("0 records updated");
             }
-        } else if (_storageDestination == StorageDestination.KAFKA) {
-            String key = storeNumber.toString() + "|" + productSKU;
-            String value = inventoryChange.toString();
-
-            try {
-                //TODO: make a JSON document to pass in as the value with additional information
-                ProducerRecord<String, String> record = new ProducerRecord<>(TOPIC, key, value);
-
-                RecordMetadata metadata = producer.send(record).get();
-
-                logger.debug(String.format("Sent record(key=%s value=%s) meta(partition=%d, offset=%d) time=%d\n", record.key(), record.value(), metadata.partition(), metadata.offset(), metadata.timestamp()));
-            }
-            catch(Exception e) {
-                logger.error(e.toString());
-            }
-
-            producer.flush();
-
+        } else {
+            getPublisher().send(storeNumber, productSKU, inventoryChange);
         }
 
     }
@@ -113,128 +151,532 @@ public class InventoryDAO extends DAOBase {
 
     }
 
-    public List<Inventory> getInventoryRecords(int numberOfInventoryRecordsToCreate) {
+    /**
+     * Store a list of inventory changes.  In DATABASE mode the changes are
+     * combined per ( store_no, product_sku ) and written with multi-row
+     * upserts of inventory.batch.size rows, inventory.transaction.size
+     * statements per transaction.
+     *
+     * @param inventoryChanges the changes to store; the inventory count of
+     * each item is the delta to apply.
+     * @return number of rows written, or -1 if a database write failed.
+     */
+    public int storeInventoryChanges(List<Inventory> inventoryChanges) {
+
+        if (_storageDestination == StorageDestination.DATABASE && writeBehindCache != null) {
+            for (Inventory inventory : inventoryChanges) {
+                writeBehindCache.add(inventory.getStoreNumber(), inventory.getProductSku(), inventory.getInventoryCount());
+                invalidateLookup(inventory.getStoreNumber(), inventory.getProductSku());
+            }
+            return inventoryChanges.size();
+        }
 
-        List<Inventory> inventoryList = new ArrayList<>();
+        if (_storageDestination == StorageDestination.DATABASE) {
+            InventoryDeltaBatch batch = new InventoryDeltaBatch();
+            for (Inventory inventory : inventoryChanges) {
+                batch.add(inventory.getStoreNumber(), inventory.getProductSku(), inventory.getInventoryCount());
+            }
+            // a failed write here isn't retried, so committing in
+            // inventory.transaction.size pieces can't apply a change twice
+            int result = writeInventoryChanges(batch, _transactionSize);
+            invalidateLookup(batch);
+            return result;
+        }
 
-        String sql = "SELECT store_no, product_sku, inventory_count FROM inventory ORDER BY random() LIMIT ?;";
+        for (Inventory inventory : inventoryChanges) {
+            storeInventoryChange(inventory, false);
+        }
+        return inventoryChanges.size();
+    }
 
-        ResultSet rs = runSQLSelect(sql, Integer.toString(numberOfInventoryRecordsToCreate));
+    // Called once a change is written, never before: a lookup that misses
+    // between an early invalidation and the write would read the old count
+    // and cache it under the new generation.  Invalidating afterwards means
+    // any lookup that read the old count is either dropped here or refused
+    // by the generation check.
+    private void invalidateLookup(int storeNumber, String productSku) {
+        if (lookupCache != null) {
+            lookupCache.invalidate(storeNumber, productSku);
+        }
+    }
 
-        if (rs == null) {
-            return null;
+    private void invalidateLookup(InventoryDeltaBatch batch) {
+        if (lookupCache != null) {
+            for (InventoryDeltaBatch.Delta delta : batch.getDeltas()) {
+                lookupCache.invalidate(delta.getStoreNumber(), delta.getProductSku());
+            }
+        }
+    }
+
+    // Writes straight to the table, bypassing the write-behind cache; the
+    // consumer relies on this so offsets are only committed once changes are
+    // in the table.  The whole batch is one transaction whatever
+    // inventory.transaction.size says: a consumer that fails replays the
+    // whole window, which would apply any chunks that had already committed
+    // a second time.  The caches' counts for these keys no longer match the
+    // table, so they read them again.
+    int storeInventoryChanges(InventoryDeltaBatch batch) {
+        int result = writeInventoryChanges(batch);
+        afterDirectWrite(batch);
+        return result;
+    }
+
+    // Called after a write that didn't go through the write-behind cache,
+    // whether or not it succeeded.
+    void afterDirectWrite(InventoryDeltaBatch batch) {
+        if (writeBehindCache != null) {
+            writeBehindCache.reloadPersisted(batch);
+        }
+        invalidateLookup(batch);
+    }
+
+    // The write itself, in one transaction, which the write-behind cache
+    // flushes with; a failed flush puts all of its changes back.
+    int writeInventoryChanges(InventoryDeltaBatch batch) {
+        return writeInventoryChanges(batch, Integer.MAX_VALUE);
+    }
+
+    private int writeInventoryChanges(InventoryDeltaBatch batch, int statementsPerTransaction) {
+
+        if (batch.isEmpty()) {
+            return 0;
         }
 
-        try {
-            while (rs.next()) {
-                int store_no = rs.getInt("store_no");
-                String product_sku = rs.getString("product_sku");
-                int inventory_count = rs.getInt("inventory_count");
-                inventoryList.add(new Inventory(store_no, product_sku, inventory_count));
+        int rowsWritten = 0;
+        List<String> sqlCodes = new ArrayList<>();
+        List<StatementBinder> binders = new ArrayList<>();
+
+        for (List<InventoryDeltaBatch.Delta> chunk : batch.chunks(_batchSize, _batchByStore)) {
+            InventoryMetrics.BATCH_SIZE.labels("upsert_rows").observe(chunk.size());
+            sqlCodes.add(getUpsertSQL(chunk.size()));
+            binders.add(getUpsertBinder(chunk));
+
+            if (sqlCodes.size() == statementsPerTransaction) {
+                int result = runSQLInTransaction(sqlCodes, binders);
+                if (result < 0) {
+                    return -1;
+                }
+                rowsWritten += result;
+                sqlCodes.clear();
+                binders.clear();
             }
-        } catch (SQLException throwables) {
-            throwables.printStackTrace();
         }
 
-        return inventoryList;
+        if (!sqlCodes.isEmpty()) {
+            int result = runSQLInTransaction(sqlCodes, binders);
+            if (result < 0) {
+                return -1;
+            }
+            rowsWritten += result;
+        }
+
+        return rowsWritten;
     }
 
-    public void processInventoryEvents(int numberOfInventoryRecords) {
+    /*
+    CREATE TABLE inventory_consumer_offsets (
+      consumer_group varchar,
+      topic varchar,
+      partition_no int,
+      next_offset int8 NOT NULL DEFAULT -1,
+      last_updated timestamp DEFAULT NOW(),
+      PRIMARY KEY ( consumer_group, topic, partition_no )
+    );
+    */
+    private static final String INSERT_CONSUMER_OFFSET_SQL = "INSERT INTO inventory_consumer_offsets ( consumer_group, topic, partition_no, next_offset ) " +
+            "VALUES ( ?, ?, ?, -1 ) ON CONFLICT ( consumer_group, topic, partition_no ) DO NOTHING;";
+
+    private static final String SELECT_CONSUMER_OFFSET_SQL = "SELECT next_offset FROM inventory_consumer_offsets " +
+            "WHERE consumer_group = ? AND topic = ? AND partition_no = ?;";
+
+    // only moves the offset on if nobody else has since we read it
+    private static final String ADVANCE_CONSUMER_OFFSET_SQL = "UPDATE inventory_consumer_offsets " +
+            "SET next_offset = ?, last_updated = NOW() " +
+            "WHERE consumer_group = ? AND topic = ? AND partition_no = ? AND next_offset = ?;";
+
+    /**
+     * Read the offsets stored for a consumer group's partitions, creating
+     * rows for partitions that don't have one yet.
+     *
+     * @return the next offset to read for each partition, -1 for a
+     * partition with nothing stored yet; or null if the offsets couldn't be
+     * read.
+     */
+    Map<Integer, Long> loadConsumerOffsets(String group, String topic, Collection<Integer> partitions) {
+        Map<Integer, Long> offsets = new HashMap<>();
+        for (int partition : partitions) {
+            if (runSQL(INSERT_CONSUMER_OFFSET_SQL, pstmt -> {
+                pstmt.setString(1, group);
+                pstmt.setString(2, topic);
+                pstmt.setInt(3, partition);
+            }) < 0) {
+                return null;
+            }
+            long[] offset = {-1};
+            if (runSQLQuery(SELECT_CONSUMER_OFFSET_SQL, rs -> offset[0] = rs.getLong(1), 1, pstmt -> {
+                pstmt.setString(1, group);
+                pstmt.setString(2, topic);
+                pstmt.setInt(3, partition);
+            }) < 0) {
+                return null;
+            }
+            offsets.put(partition, offset[0]);
+        }
+        return offsets;
+    }
+
+    /**
+     * Write a window of aggregated changes and move the consumer group's
+     * stored offsets past the events it came from, all in one transaction,
+     * so each event is applied exactly once however often it's read.  Each
+     * offset only moves if it still has the value the caller read; if
+     * another consumer has moved it since, e.g., after a rebalance, nothing
+     * is written.  As with storeInventoryChanges, every chunk of the window
+     * is in the one transaction whatever inventory.transaction.size says.
+     *
+     * @param offsetUpdates for each partition, the stored offset the caller
+     * expects and the offset to store.
+     * @return number of rows written, or -1 if the write failed or an
+     * offset had been moved by someone else.
+     */
+    int storeInventoryChangesWithOffsets(InventoryDeltaBatch batch, String group, String topic, Map<Integer, long[]> offsetUpdates) {
+
+        List<String> sqlCodes = new ArrayList<>();
+        List<StatementBinder> binders = new ArrayList<>();
+        List<Integer> expectedUpdateCounts = new ArrayList<>();
+
+        for (List<InventoryDeltaBatch.Delta> chunk : batch.chunks(_batchSize, _batchByStore)) {
+            InventoryMetrics.BATCH_SIZE.labels("upsert_rows").observe(chunk.size());
+            sqlCodes.add(getUpsertSQL(chunk.size()));
+            binders.add(getUpsertBinder(chunk));
+            expectedUpdateCounts.add(-1);
+        }
+        for (Map.Entry<Integer, long[]> entry : offsetUpdates.entrySet()) {
+            int partition = entry.getKey();
+            long expectedOffset = entry.getValue()[0];
+            long nextOffset = entry.getValue()[1];
+            sqlCodes.add(ADVANCE_CONSUMER_OFFSET_SQL);
+            binders.add(pstmt -> {
+                pstmt.setLong(1, nextOffset);
+                pstmt.setString(2, group);
+                pstmt.setString(3, topic);
+                pstmt.setInt(4, partition);
+                pstmt.setLong(5, expectedOffset);
+            });
+            expectedUpdateCounts.add(1);
+        }
 
-        while (true) {
-            final ConsumerRecords<String, String> consumerRecords = consumer.poll(1000);
+        int result = runSQLInTransaction(sqlCodes, binders, expectedUpdateCounts);
+        afterDirectWrite(batch);
+        // the offset updates are one row each
+        return result < 0 ? -1 : result - offsetUpdates.size();
+    }
 
-            int consumerRecordCount = consumerRecords.count();
-            if (consumerRecordCount == 0) {
-                break;
+    // A multi-row upsert can't touch the same row twice, so the deltas have
+    // already been combined per key.  The row's update_count goes up by the
+    // number of events that were combined into it, the same as if each event
+    // had been upserted on its own (the first insert of a row counts as 0).
+    private String getUpsertSQL(int rowCount) {
+        return upsertSQLByRowCount.computeIfAbsent(rowCount, n -> {
+            StringBuilder sb = new StringBuilder("INSERT INTO inventory ( store_no, product_sku, inventory_count, update_count ) VALUES ");
+            for (int i = 0; i < n; i++) {
+                if (i > 0) {
+                    sb.append(", ");
+                }
+                sb.append("( ?, ?, ?, ? )");
             }
+            sb.append(" ON CONFLICT ( store_no, product_sku ) " +
+                    "DO UPDATE SET " +
+                    "  inventory_count = inventory.inventory_count + excluded.inventory_count, " +
+                    "  last_updated = NOW(), " +
+                    "  update_count = inventory.update_count + excluded.update_count + 1;");
+            return sb.toString();
+        });
+    }
 
-            Iterator<ConsumerRecord<String, String>> iter = consumerRecords.iterator();
-            for(int i = 0; i < consumerRecordCount; i ++) {
-                if (iter.hasNext()) {
-                    ConsumerRecord<String, String> record = iter.next();
+    private static StatementBinder getUpsertBinder(List<InventoryDeltaBatch.Delta> chunk) {
+        return pstmt -> {
+            int place = 1;
+            for (InventoryDeltaBatch.Delta delta : chunk) {
+                pstmt.setInt(place++, delta.getStoreNumber());
+                pstmt.setString(place++, delta.getProductSku());
+                pstmt.setInt(place++, delta.getInventoryChange());
+                pstmt.setInt(place++, delta.getEventCount() - 1);
+            }
+        };
+    }
 
-                    try {
-                        // vertical bar is a regex special character, so we escape it
-                        String[] recordKeyFields = record.key().split("\\|");
-                        int storeNumber = Integer.parseInt(recordKeyFields[0]);
-                        String productSku = recordKeyFields[1];
-                        int inventoryCount = Integer.parseInt(record.value());
-                        Inventory inventory = new Inventory(storeNumber, productSku, inventoryCount);
+    /**
+     * @return a random inventory change for the default store.
+     */
+    public Inventory createRandomInventoryChange() {
+        return new Inventory(_defaultStoreNumber, getRandomSKU(), getRandomInventoryChange());
+    }
 
-                        storeInventoryChange(inventory, false);
+    /**
+     * @return how many inventory changes make up one full transaction of
+     * batched upserts.
+     */
+    public int getRecordsPerTransaction() {
+        return _batchSize * _transactionSize;
+    }
 
+    private InventoryEventSink getPublisher() {
+        InventoryEventSink sink = publisher;
+        if (sink == null) {
+            synchronized (this) {
+                sink = publisher;
+                if (sink == null) {
+                    if (_storageDestination == StorageDestination.FILE) {
+                        sink = new FileEventPublisher(getFileEventLog());
+                    } else {
+                        sink = new InventoryEventPublisher(_bootstrapServers, _topic);
                     }
-                    catch(Exception e) {
-                        logger.warn("Error processing topic message: " + record.key() + ", " + record.value() + ": " + e.toString());
-                    }
+                    publisher = sink;
                 }
+            }
+        }
+        return sink;
+    }
 
-                if (i > 0 && i % 1000 == 0) {
-                    System.out.println("Inventory events processed - " + Integer.toString(i) + " of " + Integer.toString(consumerRecordCount));
+    private FileEventLog getFileEventLog() {
+        FileEventLog eventLog = fileEventLog;
+        if (eventLog == null) {
+            synchronized (this) {
+                eventLog = fileEventLog;
+                if (eventLog == null) {
+                    eventLog = new FileEventLog(Paths.get(AppConfig.getString("inventory.fileLog.directory", "inventory-events")),
+                            AppConfig.getInt("inventory.fileLog.segmentBytes", 67108864),
+                            AppConfig.getInt("inventory.fileLog.maxSegments", 16));
+                    fileEventLog = eventLog;
                 }
-
             }
+        }
+        return eventLog;
+    }
 
-            consumer.commitAsync();
+    /**
+     * Get the current inventory count for one item.  With the write-behind
+     * cache enabled the count includes changes not yet written to the table.
+     *
+     * @return the count (0 if the item has no row), or null if it couldn't be read.
+     */
+    public Integer getInventoryCount(int storeNumber, String productSku) {
+        if (writeBehindCache != null) {
+            return writeBehindCache.getInventoryCount(storeNumber, productSku);
         }
+        return loadInventoryCount(storeNumber, productSku);
+    }
 
+    /**
+     * Look up one inventory item through the lookup cache.  Cached counts
+     * are dropped when this DAO writes a change to the item, and after
+     * inventory.lookupCache.ttlMillis to pick up changes made elsewhere.
+     *
+     * @return the item (with a count of 0 if it has no row), or null if it
+     * couldn't be read.
+     */
+    public Inventory getInventory(int storeNumber, String productSku) {
+        Integer count;
+        if (lookupCache != null) {
+            count = lookupCache.get(new InventoryKey(storeNumber, productSku), key -> getInventoryCount(storeNumber, productSku));
+        } else {
+            count = getInventoryCount(storeNumber, productSku);
+        }
+        return count == null ? null : new Inventory(storeNumber, productSku, count);
     }
 
-    private String getRandomSKU() {
-        int leftLimit = 48; // numeral '0'
-        int rightLimit = 122; // letter 'z'
-        int targetStringLength = 10;
+    /**
+     * @return lookup cache hits, misses and evictions, or an empty string if
+     * the cache is disabled.
+     */
+    public String getLookupCacheStats() {
+        if (lookupCache == null) {
+            return "";
+        }
+        return "hits=" + lookupCache.getHitCount() + " misses=" + lookupCache.getMissCount() + " evictions=" + lookupCache.getEvictionCount();
+    }
 
-        return rand.ints(leftLimit, rightLimit + 1)
-                .filter(i -> (i <= 57 || i >= 65) && (i <= 90 || i >= 97))
-                .limit(targetStringLength)
-                .collect(StringBuilder::new, StringBuilder::appendCodePoint, StringBuilder::append)
-                .toString()
-                .toUpperCase();
+    Integer loadInventoryCount(int storeNumber, String productSku) {
+        String sql = "SELECT inventory_count FROM inventory WHERE store_no = ? AND product_sku = ?;";
 
+        int[] count = {0};
+        int result = runSQLQuery(sql, rs -> count[0] = rs.getInt(1), 1, pstmt -> {
+            pstmt.setInt(1, storeNumber);
+            pstmt.setString(2, productSku);
+        });
+        if (result < 0) {
+            return null;
+        }
+        return count[0];
     }
 
-    private int getRandomInventoryChange() {
-        int minValue = 1;
-        int maxValue = 5;
-        return getRandomInventoryChange(minValue, maxValue);
+    /**
+     * Get a random sample of inventory records.  With inventory.sample.mode
+     * "keyset" (the default) rows are found with random primary key seeks;
+     * "random" sorts the whole table with ORDER BY random(), which is only
+     * reasonable for small tables.
+     *
+     * @return the sampled records, or null if the table couldn't be read.
+     */
+    public List<Inventory> getInventoryRecords(int numberOfInventoryRecordsToCreate) {
+
+        int fetchSize = AppConfig.getInt("inventory.sample.fetchSize", 1000);
+
+        if ("keyset".equalsIgnoreCase(AppConfig.getString("inventory.sample.mode", "keyset"))) {
+            InventorySampler sampler = new InventorySampler(this, AppConfig.getInt("inventory.sample.rowsPerSeek", 10), fetchSize);
+            return sampler.sample(numberOfInventoryRecordsToCreate);
+        }
+
+        String sql = "SELECT store_no, product_sku, inventory_count FROM inventory ORDER BY random() LIMIT ?;";
+
+        try (Stream<Inventory> inventoryStream = streamSQLQuery(sql, InventoryDAO::mapInventory, fetchSize,
+                pstmt -> pstmt.setInt(1, numberOfInventoryRecordsToCreate))) {
+            return inventoryStream.collect(Collectors.toList());
+        } catch (RuntimeException e) {
+            logger.error("Error reading inventory records: {}", e.getMessage());
+            return null;
+        }
     }
 
-    private int getRandomInventoryChange(int min, int max) {
-        //get random integer between min and max
-        return rand.nextInt((max - min) + min) + min;
+    /**
+     * Stream every inventory record in primary key order, reading
+     * inventory.export.fetchSize rows from the server at a time.  The stream
+     * holds a database connection, so close it when done.
+     */
+    public Stream<Inventory> streamInventoryRecords() {
+        String sql = "SELECT store_no, product_sku, inventory_count FROM inventory ORDER BY store_no, product_sku;";
+        return streamSQLQuery(sql, InventoryDAO::mapInventory, AppConfig.getInt("inventory.export.fetchSize", 10000));
+    }
+
+    /**
+     * Load inventory records from a CSV file with a header line and
+     * store_no,product_sku,inventory_count rows, always into the database.
+     * inventory.import.mode picks COPY ("copy", the default, for loading
+     * new rows) or multi-row upserts ("upsert", which overwrites the counts
+     * of rows that already exist).
+     *
+     * @return the number of rows loaded, or -1 on error.
+     */
+    public long importInventory(Path file) {
+        InventoryBulkLoader loader = newBulkLoader();
+        String mode = AppConfig.getString("inventory.import.mode", "copy");
+        if ("upsert".equals(mode)) {
+            // each batch's keys are invalidated as it's written
+            return loader.importWithUpserts(file);
+        }
+        long rows = loader.importWithCopy(file);
+        // COPY doesn't say which keys it wrote, and a lookup may have
+        // cached 0 for a row that didn't exist yet
+        if (writeBehindCache != null) {
+            writeBehindCache.reloadAllPersisted();
+        }
+        if (lookupCache != null) {
+            lookupCache.invalidateAll();
+        }
+        return rows;
+    }
+
+    /**
+     * Write every inventory record to a CSV file that importInventory can
+     * read back.
+     *
+     * @return the number of rows written, or -1 on error.
+     */
+    public long exportInventory(Path file) {
+        return newBulkLoader().export(file);
     }
 
-    private Producer<String, String> createProducer() {
+    private InventoryBulkLoader newBulkLoader() {
+        return new InventoryBulkLoader(this,
+                AppConfig.getInt("inventory.import.bufferSize", 1048576),
+                AppConfig.getInt("inventory.import.batchSize", 1000),
+                AppConfig.getInt("inventory.import.writers", 4));
+    }
 
-        Properties props = new Properties();
-        props.put(ProducerConfig.BOOTSTRAP_SERVERS_CONFIG, BOOTSTRAP_SERVERS);
-        props.put(ProducerConfig.CLIENT_ID_CONFIG, "InventoryEventsProducer");
-        props.put(ProducerConfig.KEY_SERIALIZER_CLASS_CONFIG, StringSerializer.class.getName());
-        props.put(ProducerConfig.VALUE_SERIALIZER_CLASS_CONFIG, StringSerializer.class.getName());
+    private static Inventory mapInventory(ResultSet rs) throws SQLException {
+        int store_no = rs.getInt("store_no");
+        String product_sku = rs.getString("product_sku");
+        int inventory_count = rs.getInt("inventory_count");
+        return new Inventory(store_no, product_sku, inventory_count);
+    }
 
-        return new KafkaProducer<>(props);
+    /**
+     * Apply inventory events to the database.  They're read from the Kafka
+     * topic, using kafka.consumer.workers worker threads (0 means one per
+     * partition), or with inventory.events.source=file from the local file
+     * event log, using one.  Unless kafka.consumer.continuous is set, this
+     * returns once there are no more events.
+     */
+    public void processInventoryEvents(int numberOfInventoryRecords) {
+        processInventoryEvents(AppConfig.getInt("kafka.consumer.workers", 0), AppConfig.getBoolean("kafka.consumer.continuous", false));
     }
 
-    private Consumer<String, String> createConsumer() {
+    public void processInventoryEvents(int workerCount, boolean continuous) {
+        // the consumer is published before stopRequested is checked, and
+        // stopProcessingInventoryEvents sets stopRequested before looking
+        // for a consumer, so a stop can't slip in between
+        if ("file".equalsIgnoreCase(AppConfig.getString("inventory.events.source", "kafka"))) {
+            FileEventLogConsumer fileConsumer = new FileEventLogConsumer(this, getFileEventLog(), "InventoryEventsConsumer");
+            fileEventLogConsumer = fileConsumer;
+            if (stopRequested) {
+                return;
+            }
+            fileConsumer.run(continuous);
+            logger.info("Inventory events processed - {}", fileConsumer.getProcessedCount());
+            return;
+        }
+        InventoryEventConsumerEngine engine = new InventoryEventConsumerEngine(this, _bootstrapServers, _topic);
+        consumerEngine = engine;
+        if (stopRequested) {
+            return;
+        }
+        engine.run(workerCount, continuous);
+        logger.info("Inventory events processed - {}", engine.getProcessedCount());
+    }
 
-        Properties props = new Properties();
-        props.put(ConsumerConfig.BOOTSTRAP_SERVERS_CONFIG, BOOTSTRAP_SERVERS);
-        props.put(ConsumerConfig.GROUP_ID_CONFIG, "InventoryEventsConsumer");
-        props.put(ConsumerConfig.KEY_DESERIALIZER_CLASS_CONFIG, StringDeserializer.class.getName());
-        props.put(ConsumerConfig.VALUE_DESERIALIZER_CLASS_CONFIG, StringDeserializer.class.getName());
+    /**
+     * Stop a running processInventoryEvents call once the events already
+     * read have been written and committed.  Later calls return straight
+     * away, since this is meant for shutting down.
+     */
+    public void stopProcessingInventoryEvents() {
+        stopRequested = true;
+        InventoryEventConsumerEngine engine = consumerEngine;
+        if (engine != null) {
+            engine.stop();
+        }
+        FileEventLogConsumer fileConsumer = fileEventLogConsumer;
+        if (fileConsumer != null) {
+            fileConsumer.stop();
+        }
+    }
 
-        Consumer<String, String> consumer = new KafkaConsumer<>(props);
+    String getRandomSKU() {
+        return InventoryColumns.unpackSku(ThreadLocalRandom.current().nextLong(InventoryColumns.PACKED_SKU_CODES));
+    }
 
-        consumer.subscribe(Collections.singleton(TOPIC));
+    private int getRandomInventoryChange() {
+        int minValue = 1;
+        int maxValue = 5;
+        return getRandomInventoryChange(minValue, maxValue);
+    }
 
-        return consumer;
+    private int getRandomInventoryChange(int min, int max) {
+        //get random integer between min and max, inclusive
+        return ThreadLocalRandom.current().nextInt(max - min + 1) + min;
     }
 
     public void teardown() {
-        consumer.close();
-        producer.close();
+        if (publisher != null) {
+            publisher.close();
+        }
+        if (fileEventLog != null) {
+            fileEventLog.close();
+        }
+        if (writeBehindCache != null) {
+            writeBehindCache.close();
+        }
 
         super.teardown();
     }
@@ -0,0 +1,202 @@
+package com.hatcherdev.inventorysystem.DAO;
+
+import com.hatcherdev.inventorysystem.objects.InventoryEvent;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * Collects inventory deltas and combines the ones that share a
+ * ( store_no, product_sku ) key, so a multi-row upsert never touches
+ * the same row twice and each row's delta is the sum of the events
+ * that went into it.
+ */
+class InventoryDeltaBatch {
+
+    static final class Delta {
+        private final int _storeNumber;
+        private final String _productSku;
+        private int _inventoryChange;
+        private int _eventCount;
+
+        private Delta(int storeNumber, String productSku) {
+            _storeNumber = storeNumber;
+            _productSku = productSku;
+        }
+
+        int getStoreNumber() {
+            return _storeNumber;
+        }
+        String getProductSku() {
+            return _productSku;
+        }
+        int getInventoryChange() {
+            return _inventoryChange;
+        }
+        int getEventCount() {
+            return _eventCount;
+        }
+    }
+
+    private static final class Key {
+        private final int storeNumber;
+        private final String productSku;
+
+        private Key(int storeNumber, String productSku) {
+            this.storeNumber = storeNumber;
+            this.productSku = productSku;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            Key other = (Key) o;
+            return storeNumber == other.storeNumber && productSku.equals(other.productSku);
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * storeNumber + productSku.hashCode();
+        }
+    }
+
+    // Looks up a Key using an event's SKU bytes, so events for keys that are
+    // already in the batch don't need a String.  HashMap only ever calls
+    // equals() on the key being looked up, and the hash is the same one
+    // Key computes, since String.hashCode() of ASCII text is the same sum.
+    private static final class EventProbe {
+        private InventoryEvent event;
+        private int hash;
+
+        private EventProbe set(InventoryEvent event) {
+            this.event = event;
+            int skuHash = 0;
+            byte[] sku = event.getSkuBytes();
+            for (int i = 0; i < event.getSkuLength(); i++) {
+                skuHash = 31 * skuHash + sku[i];
+            }
+            hash = 31 * event.getStoreNumber() + skuHash;
+            return this;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            Key other = (Key) o;
+            if (other.storeNumber != event.getStoreNumber() || other.productSku.length() != event.getSkuLength()) {
+                return false;
+            }
+            byte[] sku = event.getSkuBytes();
+            for (int i = 0; i < event.getSkuLength(); i++) {
+                if (other.productSku.charAt(i) != sku[i]) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
+
+    private static final Comparator<Delta> KEY_ORDER = Comparator.comparingInt(Delta::getStoreNumber).thenComparing(Delta::getProductSku);
+
+    private final Map<Object, Delta> deltas = new LinkedHashMap<>();
+    private final EventProbe probe = new EventProbe();
+    private int eventCount;
+
+    void add(int storeNumber, String productSku, int inventoryChange) {
+        add(storeNumber, productSku, inventoryChange, 1);
+    }
+
+    void add(int storeNumber, String productSku, int inventoryChange, int events) {
+        Objects.requireNonNull(productSku, "productSku");
+        Delta delta = deltas.computeIfAbsent(new Key(storeNumber, productSku), k -> new Delta(storeNumber, productSku));
+        delta._inventoryChange += inventoryChange;
+        delta._eventCount += events;
+        eventCount += events;
+    }
+
+    void add(InventoryEvent event) {
+        Delta delta = deltas.get(probe.set(event));
+        if (delta == null) {
+            add(event.getStoreNumber(), event.getProductSku(), event.getInventoryChange());
+            return;
+        }
+        delta._inventoryChange += event.getInventoryChange();
+        delta._eventCount++;
+        eventCount++;
+    }
+
+    /**
+     * @return number of distinct rows in the batch
+     */
+    int size() {
+        return deltas.size();
+    }
+
+    /**
+     * @return number of events that were added to the batch
+     */
+    int getEventCount() {
+        return eventCount;
+    }
+
+    boolean isEmpty() {
+        return deltas.isEmpty();
+    }
+
+    Collection<Delta> getDeltas() {
+        return deltas.values();
+    }
+
+    /**
+     * Split the combined rows into chunks of at most chunkSize rows.
+     *
+     * @param byStore order the rows by ( store_no, product_sku ) first, so
+     * each chunk covers as few stores, and so as few ranges of the primary
+     * key, as it can.  It also means concurrent transactions touch the rows
+     * they share in the same order.
+     */
+    List<List<Delta>> chunks(int chunkSize, boolean byStore) {
+        Collection<Delta> rows = deltas.values();
+        if (byStore && deltas.size() > 1) {
+            List<Delta> sorted = new ArrayList<>(rows);
+            sorted.sort(KEY_ORDER);
+            rows = sorted;
+        }
+        List<List<Delta>> chunks = new ArrayList<>();
+        List<Delta> current = new ArrayList<>(Math.min(chunkSize, deltas.size()));
+        for (Delta delta : rows) {
+            current.add(delta);
+            if (current.size() == chunkSize) {
+                chunks.add(current);
+                current = new ArrayList<>(chunkSize);
+            }
+        }
+        if (!current.isEmpty()) {
+            chunks.add(current);
+        }
+        return chunks;
+    }
+
+    void clear() {
+        deltas.clear();
+        eventCount = 0;
+    }
+
+}
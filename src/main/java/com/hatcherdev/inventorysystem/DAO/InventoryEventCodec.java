@@ -0,0 +1,295 @@
+package com.hatcherdev.inventorysystem.DAO;
+
+import com.hatcherdev.inventorysystem.objects.InventoryEvent;
+
+/**
+ * Encodes and decodes inventory events for the event topic.
+ *
+ * Keys are the ASCII text "store_no|product_sku" in both formats, so a key
+ * lands on the same partition whichever format its value was written in.
+ *
+ * Values are either the legacy format, the ASCII text of the inventory
+ * change, or the binary format:
+ *
+ *   byte   magic (0xE1)
+ *   byte   version (1 or 2)
+ *   int    store number
+ *   int    inventory change
+ *   long   event timestamp (epoch millis)
+ *   long   event id
+ *   long   key sequence (version 2 only)
+ *   byte   SKU length
+ *   byte[] SKU (ASCII)
+ *
+ * Version 2 adds the producer's sequence number for the event's key, which
+ * lets a consumer spot duplicate and missing events when one key's events
+ * are spread over several partitions.
+ * Multi-byte numbers are big-endian.  A legacy value always starts with
+ * '-' or a digit, so the first byte tells the formats apart and both can
+ * be read from the same topic while producers are migrated.
+ */
+public final class InventoryEventCodec {
+
+    static final byte MAGIC = (byte) 0xE1;
+    static final byte VERSION = 1;
+    static final byte SEQUENCED_VERSION = 2;
+
+    private static final int BINARY_HEADER_LENGTH = 1 + 1 + 4 + 4 + 8 + 8 + 1;
+    private static final int SEQUENCED_HEADER_LENGTH = BINARY_HEADER_LENGTH + 8;
+    private static final byte KEY_SEPARATOR = '|';
+
+    private InventoryEventCodec() {
+    }
+
+    /**
+     * @return the key "store_no|product_sku" as ASCII bytes.
+     * @throws IllegalArgumentException if the SKU isn't ASCII or is longer
+     * than InventoryEvent.MAX_SKU_LENGTH.
+     */
+    public static byte[] encodeKey(int storeNumber, String productSku) {
+        checkSku(productSku);
+        int storeDigits = decimalLength(storeNumber);
+        int skuLength = productSku.length();
+        byte[] key = new byte[storeDigits + 1 + skuLength];
+        writeDecimal(storeNumber, key, 0, storeDigits);
+        key[storeDigits] = KEY_SEPARATOR;
+        for (int i = 0; i < skuLength; i++) {
+            key[storeDigits + 1 + i] = (byte) productSku.charAt(i);
+        }
+        return key;
+    }
+
+    public static byte[] encodeValue(int storeNumber, String productSku, int inventoryChange, long eventTimestamp, long eventId) {
+        return encodeValue(storeNumber, productSku, inventoryChange, eventTimestamp, eventId, -1);
+    }
+
+    /**
+     * @param keySequence the event's sequence number for its key, or -1 to
+     * write a version 1 value without one.
+     * @throws IllegalArgumentException if the SKU isn't ASCII or is longer
+     * than InventoryEvent.MAX_SKU_LENGTH.
+     */
+    public static byte[] encodeValue(int storeNumber, String productSku, int inventoryChange, long eventTimestamp, long eventId, long keySequence) {
+        checkSku(productSku);
+        int skuLength = productSku.length();
+        boolean sequenced = keySequence >= 0;
+        byte[] value = new byte[(sequenced ? SEQUENCED_HEADER_LENGTH : BINARY_HEADER_LENGTH) + skuLength];
+        value[0] = MAGIC;
+        value[1] = sequenced ? SEQUENCED_VERSION : VERSION;
+        int pos = writeInt(value, 2, storeNumber);
+        pos = writeInt(value, pos, inventoryChange);
+        pos = writeLong(value, pos, eventTimestamp);
+        pos = writeLong(value, pos, eventId);
+        if (sequenced) {
+            pos = writeLong(value, pos, keySequence);
+        }
+        value[pos++] = (byte) skuLength;
+        for (int i = 0; i < skuLength; i++) {
+            value[pos + i] = (byte) productSku.charAt(i);
+        }
+        return value;
+    }
+
+    public static byte[] encodeValue(InventoryEvent event) {
+        int skuLength = event.getSkuLength();
+        boolean sequenced = event.getKeySequence() >= 0;
+        byte[] value = new byte[(sequenced ? SEQUENCED_HEADER_LENGTH : BINARY_HEADER_LENGTH) + skuLength];
+        value[0] = MAGIC;
+        value[1] = sequenced ? SEQUENCED_VERSION : VERSION;
+        int pos = writeInt(value, 2, event.getStoreNumber());
+        pos = writeInt(value, pos, event.getInventoryChange());
+        pos = writeLong(value, pos, event.getEventTimestamp());
+        pos = writeLong(value, pos, event.getEventId());
+        if (sequenced) {
+            pos = writeLong(value, pos, event.getKeySequence());
+        }
+        value[pos++] = (byte) skuLength;
+        System.arraycopy(event.getSkuBytes(), 0, value, pos, skuLength);
+        return value;
+    }
+
+    /**
+     * @return the inventory change as legacy ASCII text.
+     */
+    public static byte[] encodeLegacyValue(int inventoryChange) {
+        int digits = decimalLength(inventoryChange);
+        byte[] value = new byte[digits];
+        writeDecimal(inventoryChange, value, 0, digits);
+        return value;
+    }
+
+    // SKUs are written a byte per character with a one-byte length, so
+    // anything else would be silently mangled; same rules as
+    // InventoryEvent.setProductSku.
+    private static void checkSku(String productSku) {
+        int length = productSku.length();
+        if (length > InventoryEvent.MAX_SKU_LENGTH) {
+            throw new IllegalArgumentException("SKU longer than " + InventoryEvent.MAX_SKU_LENGTH + " characters: " + productSku);
+        }
+        for (int i = 0; i < length; i++) {
+            if (productSku.charAt(i) > 127) {
+                throw new IllegalArgumentException("SKU must be ASCII: " + productSku);
+            }
+        }
+    }
+
+    public static boolean isBinary(byte[] value) {
+        return value != null && value.length > 0 && value[0] == MAGIC;
+    }
+
+    /**
+     * Decode a record in either format into an existing event.  Legacy
+     * records have no event id (it's set to -1) and take their timestamp
+     * from the record.  Records without a key sequence get -1.
+     *
+     * @return false if the record is malformed, in which case the event's
+     * contents are undefined.
+     */
+    public static boolean decode(byte[] key, byte[] value, long recordTimestamp, InventoryEvent into) {
+        if (isBinary(value)) {
+            return decodeValue(value, into);
+        }
+        return decodeLegacy(key, value, recordTimestamp, into);
+    }
+
+    /**
+     * Decode a binary-format value.
+     *
+     * @return false if the value isn't a well-formed binary event.
+     */
+    public static boolean decodeValue(byte[] value, InventoryEvent into) {
+        if (value == null || value.length < BINARY_HEADER_LENGTH || value[0] != MAGIC) {
+            return false;
+        }
+        int headerLength;
+        if (value[1] == VERSION) {
+            headerLength = BINARY_HEADER_LENGTH;
+        } else if (value[1] == SEQUENCED_VERSION && value.length >= SEQUENCED_HEADER_LENGTH) {
+            headerLength = SEQUENCED_HEADER_LENGTH;
+        } else {
+            return false;
+        }
+        int skuLength = value[headerLength - 1] & 0xFF;
+        if (value.length != headerLength + skuLength) {
+            return false;
+        }
+        into.setStoreNumber(readInt(value, 2));
+        into.setInventoryChange(readInt(value, 6));
+        into.setEventTimestamp(readLong(value, 10));
+        into.setEventId(readLong(value, 18));
+        into.setKeySequence(headerLength == SEQUENCED_HEADER_LENGTH ? readLong(value, 26) : -1);
+        into.setProductSku(value, headerLength, skuLength);
+        return true;
+    }
+
+    private static boolean decodeLegacy(byte[] key, byte[] value, long recordTimestamp, InventoryEvent into) {
+        if (key == null || value == null) {
+            return false;
+        }
+
+        int separator = -1;
+        for (int i = 0; i < key.length; i++) {
+            if (key[i] == KEY_SEPARATOR) {
+                separator = i;
+                break;
+            }
+        }
+        int skuLength = key.length - separator - 1;
+        if (separator <= 0 || skuLength <= 0 || skuLength > InventoryEvent.MAX_SKU_LENGTH) {
+            return false;
+        }
+
+        long storeNumber = parseDecimal(key, 0, separator);
+        long inventoryChange = parseDecimal(value, 0, value.length);
+        if (storeNumber == Long.MIN_VALUE || inventoryChange == Long.MIN_VALUE) {
+            return false;
+        }
+
+        into.setStoreNumber((int) storeNumber);
+        into.setProductSku(key, separator + 1, skuLength);
+        into.setInventoryChange((int) inventoryChange);
+        into.setEventTimestamp(recordTimestamp);
+        into.setEventId(-1);
+        into.setKeySequence(-1);
+        return true;
+    }
+
+    // Parses an optionally negative int from ASCII digits.  Returns
+    // Long.MIN_VALUE instead of throwing when the text isn't a valid int.
+    private static long parseDecimal(byte[] bytes, int from, int to) {
+        if (from >= to) {
+            return Long.MIN_VALUE;
+        }
+        boolean negative = bytes[from] == '-';
+        int i = negative ? from + 1 : from;
+        if (i == to || to - i > 10) {
+            return Long.MIN_VALUE;
+        }
+        long result = 0;
+        for (; i < to; i++) {
+            int digit = bytes[i] - '0';
+            if (digit < 0 || digit > 9) {
+                return Long.MIN_VALUE;
+            }
+            result = result * 10 + digit;
+        }
+        result = negative ? -result : result;
+        if (result < Integer.MIN_VALUE || result > Integer.MAX_VALUE) {
+            return Long.MIN_VALUE;
+        }
+        return result;
+    }
+
+    private static int decimalLength(int value) {
+        long v = value;
+        int length = 1;
+        if (v < 0) {
+            length++;
+            v = -v;
+        }
+        while (v >= 10) {
+            v /= 10;
+            length++;
+        }
+        return length;
+    }
+
+    private static void writeDecimal(int value, byte[] dest, int offset, int length) {
+        long v = value;
+        if (v < 0) {
+            dest[offset] = '-';
+            v = -v;
+        }
+        int pos = offset + length - 1;
+        do {
+            dest[pos--] = (byte) ('0' + (v % 10));
+            v /= 10;
+        } while (v > 0);
+    }
+
+    private static int writeInt(byte[] dest, int pos, int value) {
+        dest[pos] = (byte) (value >>> 24);
+        dest[pos + 1] = (byte) (value >>> 16);
+        dest[pos + 2] = (byte) (value >>> 8);
+        dest[pos + 3] = (byte) value;
+        return pos + 4;
+    }
+
+    private static int writeLong(byte[] dest, int pos, long value) {
+        writeInt(dest, pos, (int) (value >>> 32));
+        writeInt(dest, pos + 4, (int) value);
+        return pos + 8;
+    }
+
+    private static int readInt(byte[] src, int pos) {
+        return ((src[pos] & 0xFF) << 24)
+                | ((src[pos + 1] & 0xFF) << 16)
+                | ((src[pos + 2] & 0xFF) << 8)
+                | (src[pos + 3] & 0xFF);
+    }
+
+    private static long readLong(byte[] src, int pos) {
+        return ((long) readInt(src, pos) << 32) | (readInt(src, pos + 4) & 0xFFFFFFFFL);
+    }
+
+}
@@ -0,0 +1,440 @@
+package com.hatcherdev.inventorysystem.DAO;
+
+import com.hatcherdev.inventorysystem.config.AppConfig;
+import com.hatcherdev.inventorysystem.metrics.InventoryMetrics;
+import com.hatcherdev.inventorysystem.objects.InventoryEvent;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.*;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.kafka.clients.consumer.*;
+import org.apache.kafka.common.PartitionInfo;
+import org.apache.kafka.common.TopicPartition;
+import org.apache.kafka.common.errors.WakeupException;
+import org.apache.kafka.common.serialization.ByteArrayDeserializer;
+
+/**
+ * Reads inventory events from Kafka with several worker threads and
+ * applies them to the database.
+ *
+ * Each worker has its own consumer in the same consumer group, so Kafka
+ * spreads the topic's partitions over the workers.  All the events for a
+ * key are in one partition and are handled by one worker, which combines
+ * them into a single delta per key before writing.  Offsets are only
+ * committed after the database write for the events succeeds; if the write
+ * fails, the worker seeks back and reads the events again.
+ *
+ * When the producer spreads hot keys over several partitions, a key's
+ * events can be handled by more than one worker.  Deltas add up the same
+ * in any order, and events that carry a key sequence number are checked
+ * against a tracker shared by the workers, so duplicates are skipped.
+ *
+ * With kafka.consumer.exactlyOnce set, the offsets that matter are the
+ * ones stored in the inventory_consumer_offsets table, written in the same
+ * transaction as the window's upserts.  A worker seeks to the stored
+ * offsets when it's assigned partitions, and a stored offset only moves if
+ * it still has the value the worker last saw, so a worker that has lost
+ * its partitions can't write over the new owner's progress.  Kafka's
+ * committed offsets are still updated afterwards, for monitoring.
+ */
+class InventoryEventConsumerEngine {
+
+    private static final Logger logger = LoggerFactory.getLogger(InventoryEventConsumerEngine.class);
+
+    private final InventoryDAO _inventoryDAO;
+    private final String _bootstrapServers;
+    private final String _topic;
+    private final String _group = "InventoryEventsConsumer";
+    private final boolean _exactlyOnce;
+
+    private final long _pollTimeoutMillis;
+    private final int _maxIdlePolls;
+    private final long _retryBackoffMillis;
+    private final long _windowMillis;
+    private final int _windowRecords;
+    private final long _lagIntervalMillis;
+
+    private final List<Consumer<byte[], byte[]>> activeConsumers = new CopyOnWriteArrayList<>();
+    private final AtomicLong processedCount = new AtomicLong();
+    private final KeySequenceTracker sequenceTracker;
+    private final PartitionSkew partitionSkew = new PartitionSkew("consumer");
+    // an engine runs once, so stop() works even before run() starts
+    private volatile boolean running = true;
+
+    InventoryEventConsumerEngine(InventoryDAO inventoryDAO, String bootstrapServers, String topic) {
+        _inventoryDAO = inventoryDAO;
+        _bootstrapServers = bootstrapServers;
+        _topic = topic;
+        _pollTimeoutMillis = AppConfig.getLong("kafka.consumer.pollTimeoutMillis", 1000);
+        _maxIdlePolls = Math.max(1, AppConfig.getInt("kafka.consumer.maxIdlePolls", 3));
+        _retryBackoffMillis = AppConfig.getLong("kafka.consumer.retryBackoffMillis", 1000);
+        _windowMillis = AppConfig.getLong("kafka.consumer.aggregation.windowMillis", 1000);
+        _windowRecords = Math.max(1, AppConfig.getInt("kafka.consumer.aggregation.windowRecords", 10000));
+        _lagIntervalMillis = AppConfig.getLong("kafka.consumer.lagIntervalMillis", 10000);
+        _exactlyOnce = AppConfig.getBoolean("kafka.consumer.exactlyOnce", false);
+        sequenceTracker = AppConfig.getBoolean("kafka.consumer.sequenceCheck", true)
+                ? new KeySequenceTracker(AppConfig.getInt("kafka.consumer.sequenceCheck.maxKeys", 500000)) : null;
+    }
+
+    /**
+     * Process events until stop() is called or, when not continuous, until
+     * every worker has seen kafka.consumer.maxIdlePolls empty polls in a row.
+     *
+     * @param workerCount number of worker threads; 0 or less means one per
+     * partition of the topic.
+     * @param continuous keep polling when the topic has no new events.
+     */
+    void run(int workerCount, boolean continuous) {
+
+        if (workerCount <= 0) {
+            workerCount = getPartitionCount();
+        }
+
+        logger.info("Processing inventory events with {} workers", workerCount);
+
+        ExecutorService executor = Executors.newFixedThreadPool(workerCount, r -> {
+            Thread t = new Thread(r);
+            t.setName("inventory-consumer-" + t.getId());
+            return t;
+        });
+
+        List<Future<?>> workers = new ArrayList<>(workerCount);
+        for (int i = 0; i < workerCount; i++) {
+            workers.add(executor.submit(() -> runWorker(continuous)));
+        }
+
+        for (Future<?> worker : workers) {
+            try {
+                worker.get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                stop();
+            } catch (ExecutionException e) {
+                logger.error("Inventory consumer worker failed: {}", e.getCause().toString());
+            }
+        }
+
+        executor.shutdown();
+        running = false;
+        logger.info(partitionSkew.summarize());
+    }
+
+    /**
+     * Ask the workers to finish.  Each worker finishes writing and committing
+     * the events it already has before it exits.
+     */
+    void stop() {
+        running = false;
+        for (Consumer<byte[], byte[]> consumer : activeConsumers) {
+            consumer.wakeup();
+        }
+    }
+
+    long getProcessedCount() {
+        return processedCount.get();
+    }
+
+    private int getPartitionCount() {
+        try (Consumer<byte[], byte[]> consumer = createConsumer()) {
+            List<PartitionInfo> partitions = consumer.partitionsFor(_topic);
+            return (partitions == null || partitions.isEmpty()) ? 1 : partitions.size();
+        }
+    }
+
+    private void runWorker(boolean continuous) {
+        Worker worker = new Worker(createConsumer());
+        worker.run(continuous);
+    }
+
+    /**
+     * One consumer thread.  Events are summed per key into a window, and the
+     * window is written as one batch of upserts when it holds
+     * kafka.consumer.aggregation.windowRecords events or is
+     * kafka.consumer.aggregation.windowMillis old.  Offsets for every
+     * partition in the window are committed once the window is written.
+     */
+    private class Worker implements ConsumerRebalanceListener {
+
+        private final Consumer<byte[], byte[]> consumer;
+        private final InventoryDeltaBatch window = new InventoryDeltaBatch();
+        // every record is decoded into this one event
+        private final InventoryEvent event = new InventoryEvent();
+        // first offset read and next offset to commit for each partition in the window
+        private final Map<TopicPartition, Long> firstOffsets = new HashMap<>();
+        private final Map<TopicPartition, OffsetAndMetadata> nextOffsets = new HashMap<>();
+        // sequenced events in the window, to release if the write fails
+        private final List<AcceptedSequence> acceptedSequences = new ArrayList<>();
+        // exactly-once mode: the offset stored in the database for each
+        // assigned partition, as this worker last saw or wrote it
+        private final Map<TopicPartition, Long> storedOffsets = new HashMap<>();
+        private long windowStartMillis;
+        private int windowRecordCount;
+        private long lastLagMillis;
+
+        private Worker(Consumer<byte[], byte[]> consumer) {
+            this.consumer = consumer;
+        }
+
+        private void run(boolean continuous) {
+
+            activeConsumers.add(consumer);
+
+            try {
+                consumer.subscribe(Collections.singleton(_topic), this);
+
+                int idlePolls = 0;
+                while (running) {
+                    ConsumerRecords<byte[], byte[]> consumerRecords;
+                    try {
+                        consumerRecords = consumer.poll(_pollTimeoutMillis);
+                    } catch (WakeupException e) {
+                        break;
+                    }
+
+                    if (consumerRecords.isEmpty()) {
+                        // don't hold a partly filled window while the topic is quiet
+                        flushWindow();
+                        idlePolls++;
+                        if (!continuous && idlePolls >= _maxIdlePolls) {
+                            break;
+                        }
+                        continue;
+                    }
+                    idlePolls = 0;
+
+                    for (TopicPartition partition : consumerRecords.partitions()) {
+                        List<ConsumerRecord<byte[], byte[]>> records = consumerRecords.records(partition);
+                        partitionSkew.record(partition.partition(), records.size());
+                        addToWindow(partition, records);
+                    }
+                    InventoryMetrics.EVENTS_CONSUMED.inc(consumerRecords.count());
+                    recordLag();
+
+                    if (windowRecordCount >= _windowRecords
+                            || System.currentTimeMillis() - windowStartMillis >= _windowMillis) {
+                        flushWindow();
+                    }
+                }
+
+                flushWindow();
+            } finally {
+                activeConsumers.remove(consumer);
+                consumer.close();
+            }
+        }
+
+        private void addToWindow(TopicPartition partition, List<ConsumerRecord<byte[], byte[]>> records) {
+
+            if (windowRecordCount == 0) {
+                windowStartMillis = System.currentTimeMillis();
+            }
+
+            for (ConsumerRecord<byte[], byte[]> record : records) {
+                if (InventoryEventCodec.decode(record.key(), record.value(), record.timestamp(), event)) {
+                    if (event.getKeySequence() >= 0 && sequenceTracker != null && !acceptSequence()) {
+                        continue;
+                    }
+                    window.add(event);
+                } else {
+                    logger.warn("Skipping malformed inventory event at {} offset {}", partition, record.offset());
+                }
+            }
+            windowRecordCount += records.size();
+
+            firstOffsets.putIfAbsent(partition, records.get(0).offset());
+            nextOffsets.put(partition, new OffsetAndMetadata(records.get(records.size() - 1).offset() + 1));
+        }
+
+        // duplicates are counted by the tracker and skipped
+        private boolean acceptSequence() {
+            AcceptedSequence accepted = new AcceptedSequence(event.getEventId() >>> 40, event.getStoreNumber(), event.getProductSku(), event.getKeySequence());
+            if (!sequenceTracker.accept(accepted.producerId, accepted.storeNumber, accepted.productSku, accepted.keySequence)) {
+                return false;
+            }
+            acceptedSequences.add(accepted);
+            return true;
+        }
+
+        private void flushWindow() {
+
+            if (windowRecordCount == 0) {
+                return;
+            }
+
+            InventoryMetrics.BATCH_SIZE.labels("consumer_window_events").observe(windowRecordCount);
+            int result = _exactlyOnce ? storeWithOffsets() : _inventoryDAO.storeInventoryChanges(window);
+            if (result < 0) {
+                // read the events again rather than skipping them
+                logger.error("Error storing {} aggregated inventory changes, retrying from {}", window.size(), firstOffsets);
+                if (_exactlyOnce) {
+                    // the stored offsets are the truth, even if another
+                    // worker has moved them
+                    seekToStoredOffsets(firstOffsets.keySet());
+                } else {
+                    for (Map.Entry<TopicPartition, Long> entry : firstOffsets.entrySet()) {
+                        consumer.seek(entry.getKey(), entry.getValue());
+                    }
+                }
+                for (AcceptedSequence accepted : acceptedSequences) {
+                    sequenceTracker.release(accepted.producerId, accepted.storeNumber, accepted.productSku, accepted.keySequence);
+                }
+                clearWindow();
+                backoff();
+                return;
+            }
+
+            try {
+                commit();
+            } catch (WakeupException e) {
+                // stop() was called during the commit; try once more so the work isn't repeated
+                commit();
+                running = false;
+            } catch (CommitFailedException e) {
+                // the partitions were reassigned, the new owner re-reads from the last commit
+                logger.warn("Offset commit failed after rebalance: {}", e.getMessage());
+            }
+
+            long processed = processedCount.addAndGet(windowRecordCount);
+            if (logger.isDebugEnabled()) {
+                logger.debug("Inventory events processed - {} ({} events written as {} upserts)", processed, windowRecordCount, window.size());
+            }
+            clearWindow();
+        }
+
+        private int storeWithOffsets() {
+            Map<Integer, long[]> offsetUpdates = new HashMap<>();
+            for (Map.Entry<TopicPartition, OffsetAndMetadata> entry : nextOffsets.entrySet()) {
+                long expected = storedOffsets.getOrDefault(entry.getKey(), -1L);
+                offsetUpdates.put(entry.getKey().partition(), new long[]{expected, entry.getValue().offset()});
+            }
+            int result = _inventoryDAO.storeInventoryChangesWithOffsets(window, _group, _topic, offsetUpdates);
+            if (result >= 0) {
+                for (Map.Entry<TopicPartition, OffsetAndMetadata> entry : nextOffsets.entrySet()) {
+                    storedOffsets.put(entry.getKey(), entry.getValue().offset());
+                }
+            }
+            return result;
+        }
+
+        // Seek to the offsets stored in the database; partitions without one
+        // fall back to the window's first offsets, then Kafka's committed
+        // offsets.
+        private void seekToStoredOffsets(Collection<TopicPartition> partitions) {
+            List<Integer> partitionNumbers = new ArrayList<>(partitions.size());
+            for (TopicPartition partition : partitions) {
+                partitionNumbers.add(partition.partition());
+            }
+            Map<Integer, Long> offsets = _inventoryDAO.loadConsumerOffsets(_group, _topic, partitionNumbers);
+            for (TopicPartition partition : partitions) {
+                Long stored = offsets == null ? null : offsets.get(partition.partition());
+                if (stored != null) {
+                    storedOffsets.put(partition, stored);
+                }
+                if (stored != null && stored >= 0) {
+                    consumer.seek(partition, stored);
+                } else if (firstOffsets.containsKey(partition)) {
+                    consumer.seek(partition, firstOffsets.get(partition));
+                }
+            }
+        }
+
+        // Looking up end offsets is a round trip to the brokers, so lag is
+        // only measured every kafka.consumer.lagIntervalMillis.
+        private void recordLag() {
+            long now = System.currentTimeMillis();
+            if (now - lastLagMillis < _lagIntervalMillis) {
+                return;
+            }
+            lastLagMillis = now;
+
+            Set<TopicPartition> assignment = consumer.assignment();
+            if (assignment.isEmpty()) {
+                return;
+            }
+            Map<TopicPartition, Long> endOffsets = consumer.endOffsets(assignment);
+            for (TopicPartition partition : assignment) {
+                Long endOffset = endOffsets.get(partition);
+                if (endOffset != null) {
+                    long lag = Math.max(0, endOffset - consumer.position(partition));
+                    InventoryMetrics.CONSUMER_LAG.labels(partition.topic(), Integer.toString(partition.partition())).set(lag);
+                }
+            }
+        }
+
+        private void commit() {
+            consumer.commitSync(new HashMap<>(nextOffsets));
+        }
+
+        private void clearWindow() {
+            window.clear();
+            acceptedSequences.clear();
+            firstOffsets.clear();
+            nextOffsets.clear();
+            windowRecordCount = 0;
+        }
+
+        @Override
+        public void onPartitionsRevoked(Collection<TopicPartition> partitions) {
+            // write and commit what we have while we still own the partitions
+            flushWindow();
+            for (TopicPartition partition : partitions) {
+                storedOffsets.remove(partition);
+            }
+        }
+
+        @Override
+        public void onPartitionsAssigned(Collection<TopicPartition> partitions) {
+            // consumption resumes from the committed offsets, or in
+            // exactly-once mode from the offsets stored with the data
+            if (_exactlyOnce && !partitions.isEmpty()) {
+                seekToStoredOffsets(partitions);
+            }
+        }
+    }
+
+    private static class AcceptedSequence {
+        private final long producerId;
+        private final int storeNumber;
+        private final String productSku;
+        private final long keySequence;
+
+        private AcceptedSequence(long producerId, int storeNumber, String productSku, long keySequence) {
+            this.producerId = producerId;
+            this.storeNumber = storeNumber;
+            this.productSku = productSku;
+            this.keySequence = keySequence;
+        }
+    }
+
+    private void backoff() {
+        try {
+            Thread.sleep(_retryBackoffMillis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            running = false;
+        }
+    }
+
+    private Consumer<byte[], byte[]> createConsumer() {
+
+        Properties props = new Properties();
+        props.put(ConsumerConfig.BOOTSTRAP_SERVERS_CONFIG, _bootstrapServers);
+        props.put(ConsumerConfig.GROUP_ID_CONFIG, _group);
+        props.put(ConsumerConfig.KEY_DESERIALIZER_CLASS_CONFIG, ByteArrayDeserializer.class.getName());
+        props.put(ConsumerConfig.VALUE_DESERIALIZER_CLASS_CONFIG, ByteArrayDeserializer.class.getName());
+        // offsets are committed by the workers once the events are in the database
+        props.put(ConsumerConfig.ENABLE_AUTO_COMMIT_CONFIG, "false");
+        props.put(ConsumerConfig.MAX_POLL_RECORDS_CONFIG, AppConfig.getString("kafka.consumer.maxPollRecords", "2000"));
+
+        return new KafkaConsumer<>(props);
+    }
+
+}
@@ -0,0 +1,281 @@
+package com.hatcherdev.inventorysystem.DAO;
+
+import com.hatcherdev.inventorysystem.config.AppConfig;
+import com.hatcherdev.inventorysystem.metrics.InventoryMetrics;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.nio.charset.StandardCharsets;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Random;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.kafka.clients.producer.*;
+import org.apache.kafka.common.serialization.ByteArraySerializer;
+
+/**
+ * Sends inventory events to Kafka.
+ *
+ * In async mode (kafka.producer.async=true) records are pipelined: send()
+ * returns as soon as the record is handed to the producer, with at most
+ * kafka.producer.maxInFlight records waiting on a broker acknowledgement.
+ * The result of each record is reported by a callback, and the producer is
+ * only flushed when the publisher is closed.
+ *
+ * kafka.producer.partitioner picks how keys map to partitions: "default"
+ * (Kafka's hash of the key), "storeAffinity" or "hotKeySpread".  With key
+ * sequences on (the default for hotKeySpread), each key's events are
+ * numbered 0, 1, 2, ... so consumers can spot duplicates and gaps once a
+ * key's events no longer arrive in order on one partition.
+ *
+ * Sequences are kept for at most kafka.producer.keySequences.maxKeys keys,
+ * in segments that each drop their least recently sent key.  A dropped key
+ * starts again from 0 when it's next sent, so that consumers don't take
+ * the new numbers for duplicates it's given a new producer id (the high
+ * 24 bits of the event id, which consumers track sequences under): when a
+ * key that was numbered under the current producer id is dropped, the
+ * publisher moves on to a new id for the keys it numbers from then on.
+ */
+class InventoryEventPublisher implements InventoryEventSink {
+
+    private static final Logger logger = LoggerFactory.getLogger(InventoryEventPublisher.class);
+
+    private final String _topic;
+    private final boolean _async;
+    private final int _maxInFlight;
+    private final Semaphore inFlight;
+    private final boolean _binaryFormat;
+    private final boolean _keySequences;
+    private final Map<InventoryKey, KeySequence>[] keySequenceSegments;
+    private final PartitionSkew partitionSkew = new PartitionSkew("producer");
+
+    private static final int KEY_SEQUENCE_SEGMENT_COUNT = 16;
+
+    // event ids are a random producer id in the high 24 bits and a
+    // sequence number in the low 40 bits; this is the current producer id,
+    // already shifted
+    private final Random producerIds = new Random();
+    private final AtomicLong eventIdBase = new AtomicLong(((long) producerIds.nextInt(1 << 24)) << 40);
+    private final AtomicLong eventSequence = new AtomicLong();
+
+    private final AtomicLong sentCount = new AtomicLong();
+    private final AtomicLong failedCount = new AtomicLong();
+
+    private final Producer<byte[], byte[]> producer;
+
+    InventoryEventPublisher(String bootstrapServers, String topic) {
+        _topic = topic;
+        _async = AppConfig.getBoolean("kafka.producer.async", true);
+        _maxInFlight = Math.max(1, AppConfig.getInt("kafka.producer.maxInFlight", 10000));
+        inFlight = new Semaphore(_maxInFlight);
+        _binaryFormat = !"legacy".equalsIgnoreCase(AppConfig.getString("kafka.event.format", "binary"));
+        String partitioner = AppConfig.getString("kafka.producer.partitioner", "default");
+        _keySequences = _binaryFormat && AppConfig.getBoolean("kafka.producer.keySequences", "hotKeySpread".equals(partitioner));
+        keySequenceSegments = _keySequences ? createKeySequenceSegments(AppConfig.getInt("kafka.producer.keySequences.maxKeys", 500000)) : null;
+        producer = createProducer(bootstrapServers, partitioner);
+    }
+
+    // the next sequence number for a key, and the producer id it's numbered under
+    private static final class KeySequence {
+        private final long eventIdBase;
+        private long next;
+
+        private KeySequence(long eventIdBase) {
+            this.eventIdBase = eventIdBase;
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private Map<InventoryKey, KeySequence>[] createKeySequenceSegments(int maxKeys) {
+        int segmentMaxKeys = Math.max(1, maxKeys / KEY_SEQUENCE_SEGMENT_COUNT);
+        Map<InventoryKey, KeySequence>[] segments = new Map[KEY_SEQUENCE_SEGMENT_COUNT];
+        for (int i = 0; i < KEY_SEQUENCE_SEGMENT_COUNT; i++) {
+            segments[i] = new LinkedHashMap<>(16, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<InventoryKey, KeySequence> eldest) {
+                    if (size() <= segmentMaxKeys) {
+                        return false;
+                    }
+                    // if the key comes back it mustn't be numbered from 0
+                    // under the id it was numbered under before
+                    long droppedBase = eldest.getValue().eventIdBase;
+                    if (eventIdBase.get() == droppedBase) {
+                        eventIdBase.compareAndSet(droppedBase, nextEventIdBase(droppedBase));
+                    }
+                    return true;
+                }
+            };
+        }
+        return segments;
+    }
+
+    private long nextEventIdBase(long currentBase) {
+        long base;
+        synchronized (producerIds) {
+            do {
+                base = ((long) producerIds.nextInt(1 << 24)) << 40;
+            } while (base == currentBase);
+        }
+        return base;
+    }
+
+    private Producer<byte[], byte[]> createProducer(String bootstrapServers, String partitioner) {
+
+        Properties props = new Properties();
+        props.put(ProducerConfig.BOOTSTRAP_SERVERS_CONFIG, bootstrapServers);
+        props.put(ProducerConfig.CLIENT_ID_CONFIG, "InventoryEventsProducer");
+        props.put(ProducerConfig.KEY_SERIALIZER_CLASS_CONFIG, ByteArraySerializer.class.getName());
+        props.put(ProducerConfig.VALUE_SERIALIZER_CLASS_CONFIG, ByteArraySerializer.class.getName());
+        props.put(ProducerConfig.LINGER_MS_CONFIG, AppConfig.getString("kafka.producer.lingerMs", "5"));
+        props.put(ProducerConfig.BATCH_SIZE_CONFIG, AppConfig.getString("kafka.producer.batchSize", "65536"));
+        props.put(ProducerConfig.COMPRESSION_TYPE_CONFIG, AppConfig.getString("kafka.producer.compressionType", "lz4"));
+        props.put(ProducerConfig.ACKS_CONFIG, AppConfig.getString("kafka.producer.acks", "all"));
+        if ("storeAffinity".equals(partitioner)) {
+            props.put(ProducerConfig.PARTITIONER_CLASS_CONFIG, StoreAffinityPartitioner.class.getName());
+        } else if ("hotKeySpread".equals(partitioner)) {
+            props.put(ProducerConfig.PARTITIONER_CLASS_CONFIG, HotKeySpreadingPartitioner.class.getName());
+            for (String name : new String[]{HotKeySpreadingPartitioner.VIRTUAL_NODES_CONFIG,
+                    HotKeySpreadingPartitioner.HOT_KEY_EVENTS_PER_SECOND_CONFIG, HotKeySpreadingPartitioner.HOT_KEY_SPREAD_CONFIG}) {
+                String setting = AppConfig.getString(name, null);
+                if (setting != null) {
+                    props.put(name, setting);
+                }
+            }
+        } else if (!"default".equals(partitioner)) {
+            logger.warn("Unknown kafka.producer.partitioner {}, using the default", partitioner);
+        }
+
+        return new KafkaProducer<>(props);
+    }
+
+    /**
+     * Send one event.  In async mode this blocks only when the max number
+     * of records is already in flight.
+     */
+    @Override
+    public void send(int storeNumber, String productSku, int inventoryChange) {
+
+        byte[] key = InventoryEventCodec.encodeKey(storeNumber, productSku);
+        byte[] value;
+        if (_binaryFormat) {
+            long base;
+            long keySequence = -1;
+            if (_keySequences) {
+                InventoryKey inventoryKey = new InventoryKey(storeNumber, productSku);
+                Map<InventoryKey, KeySequence> segment = keySequenceSegments[segmentIndex(inventoryKey)];
+                synchronized (segment) {
+                    KeySequence sequence = segment.computeIfAbsent(inventoryKey, k -> new KeySequence(eventIdBase.get()));
+                    base = sequence.eventIdBase;
+                    keySequence = sequence.next++;
+                }
+            } else {
+                base = eventIdBase.get();
+            }
+            long eventId = base | (eventSequence.incrementAndGet() & 0xFFFFFFFFFFL);
+            value = InventoryEventCodec.encodeValue(storeNumber, productSku, inventoryChange, System.currentTimeMillis(), eventId, keySequence);
+        } else {
+            value = InventoryEventCodec.encodeLegacyValue(inventoryChange);
+        }
+
+        ProducerRecord<byte[], byte[]> record = new ProducerRecord<>(_topic, key, value);
+
+        if (!_async) {
+            try {
+                RecordMetadata metadata = producer.send(record).get();
+                onCompletion(record, metadata, null);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                onCompletion(record, null, e);
+            } catch (Exception e) {
+                onCompletion(record, null, e);
+            }
+            return;
+        }
+
+        try {
+            inFlight.acquire();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            onCompletion(record, null, e);
+            return;
+        }
+
+        try {
+            producer.send(record, (metadata, exception) -> {
+                inFlight.release();
+                onCompletion(record, metadata, exception);
+            });
+        } catch (RuntimeException e) {
+            // send() can throw before the record is accepted, in which case
+            // the callback never runs
+            inFlight.release();
+            onCompletion(record, null, e);
+        }
+    }
+
+    private static int segmentIndex(InventoryKey key) {
+        int h = key.hashCode();
+        h ^= (h >>> 16);
+        return h & (KEY_SEQUENCE_SEGMENT_COUNT - 1);
+    }
+
+    private void onCompletion(ProducerRecord<byte[], byte[]> record, RecordMetadata metadata, Exception exception) {
+        if (exception != null) {
+            failedCount.incrementAndGet();
+            InventoryMetrics.EVENTS_PRODUCE_FAILED.inc();
+            if (logger.isErrorEnabled()) {
+                logger.error("Failed to send record(key={}): {}", new String(record.key(), StandardCharsets.US_ASCII), exception.toString());
+            }
+            return;
+        }
+
+        sentCount.incrementAndGet();
+        InventoryMetrics.EVENTS_PRODUCED.inc();
+        InventoryMetrics.recordFirstWrite("kafka");
+        partitionSkew.record(metadata.partition(), 1);
+        if (logger.isDebugEnabled()) {
+            logger.debug("Sent record(key={}) meta(partition={}, offset={}) time={}", new String(record.key(), StandardCharsets.US_ASCII), metadata.partition(), metadata.offset(), metadata.timestamp());
+        }
+    }
+
+    @Override
+    public long getSentCount() {
+        return sentCount.get();
+    }
+
+    @Override
+    public long getFailedCount() {
+        return failedCount.get();
+    }
+
+    /**
+     * Wait for every record that's been sent to be acknowledged or fail.
+     */
+    @Override
+    public void flush() {
+        producer.flush();
+        // callbacks have all run by the time flush() returns, so this doesn't
+        // wait; it makes sure the permits are back before anyone re-uses them
+        inFlight.acquireUninterruptibly(_maxInFlight);
+        inFlight.release(_maxInFlight);
+    }
+
+    @Override
+    public void close() {
+        flush();
+        producer.close();
+
+        long failed = failedCount.get();
+        if (failed > 0) {
+            logger.error("Inventory events sent: {}, failed: {}", sentCount.get(), failed);
+        } else {
+            logger.info("Inventory events sent: {}", sentCount.get());
+        }
+        logger.info(partitionSkew.summarize());
+    }
+
+}
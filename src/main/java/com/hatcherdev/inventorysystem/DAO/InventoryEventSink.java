@@ -0,0 +1,23 @@
+package com.hatcherdev.inventorysystem.DAO;
+
+/**
+ * Somewhere inventory events are sent to be applied later: the Kafka topic
+ * or the local file event log.
+ */
+interface InventoryEventSink extends AutoCloseable {
+
+    void send(int storeNumber, String productSku, int inventoryChange);
+
+    long getSentCount();
+
+    long getFailedCount();
+
+    /**
+     * Wait for every event that's been sent to be stored or fail.
+     */
+    void flush();
+
+    @Override
+    void close();
+
+}
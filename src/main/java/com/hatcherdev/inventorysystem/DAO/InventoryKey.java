@@ -0,0 +1,45 @@
+package com.hatcherdev.inventorysystem.DAO;
+
+/**
+ * The primary key of an inventory row, ( store_no, product_sku ).
+ */
+final class InventoryKey {
+
+    private final int _storeNumber;
+    private final String _productSku;
+
+    InventoryKey(int storeNumber, String productSku) {
+        _storeNumber = storeNumber;
+        _productSku = productSku;
+    }
+
+    int getStoreNumber() {
+        return _storeNumber;
+    }
+    String getProductSku() {
+        return _productSku;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof InventoryKey)) {
+            return false;
+        }
+        InventoryKey other = (InventoryKey) o;
+        return _storeNumber == other._storeNumber && _productSku.equals(other._productSku);
+    }
+
+    @Override
+    public int hashCode() {
+        return 31 * _storeNumber + _productSku.hashCode();
+    }
+
+    @Override
+    public String toString() {
+        return _storeNumber + "|" + _productSku;
+    }
+
+}
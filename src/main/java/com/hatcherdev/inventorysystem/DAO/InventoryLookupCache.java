@@ -0,0 +1,143 @@
+package com.hatcherdev.inventorysystem.DAO;
+
+import com.hatcherdev.inventorysystem.metrics.InventoryMetrics;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+
+/**
+ * A bounded read-through cache of inventory counts.
+ *
+ * Keys are spread over segments, each a small LRU map with its own lock,
+ * so readers of different keys rarely wait on each other.  Entries expire
+ * ttlMillis after they're loaded, and a segment drops its least recently
+ * used entry when it's full.  Writes invalidate the key once they're
+ * written; each segment keeps a generation number so a load that started
+ * before an invalidation doesn't put the old value back.
+ */
+class InventoryLookupCache {
+
+    private static final int SEGMENT_COUNT = 16;
+
+    private static final class CachedCount {
+        private final int count;
+        private final long expiresAtNanos;
+
+        private CachedCount(int count, long expiresAtNanos) {
+            this.count = count;
+            this.expiresAtNanos = expiresAtNanos;
+        }
+    }
+
+    private final class Segment {
+        private final LinkedHashMap<InventoryKey, CachedCount> map;
+        private long generation;
+
+        private Segment(int maxEntries) {
+            map = new LinkedHashMap<>(16, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<InventoryKey, CachedCount> eldest) {
+                    if (size() > maxEntries) {
+                        evictions.increment();
+                        return true;
+                    }
+                    return false;
+                }
+            };
+        }
+    }
+
+    private final Segment[] segments = new Segment[SEGMENT_COUNT];
+    private final long _ttlNanos;
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+
+    InventoryLookupCache(int maxEntries, long ttlMillis) {
+        int segmentMaxEntries = Math.max(1, maxEntries / SEGMENT_COUNT);
+        for (int i = 0; i < SEGMENT_COUNT; i++) {
+            segments[i] = new Segment(segmentMaxEntries);
+        }
+        _ttlNanos = TimeUnit.MILLISECONDS.toNanos(ttlMillis);
+    }
+
+    /**
+     * @param loader reads the count when it isn't cached; a null result
+     * isn't cached.
+     * @return the cached or loaded count, or null if the loader returned null.
+     */
+    Integer get(InventoryKey key, Function<InventoryKey, Integer> loader) {
+        Segment segment = segmentFor(key);
+        long generation;
+
+        synchronized (segment) {
+            CachedCount cached = segment.map.get(key);
+            if (cached != null) {
+                if (System.nanoTime() - cached.expiresAtNanos < 0) {
+                    hits.increment();
+                    InventoryMetrics.LOOKUP_CACHE_REQUESTS.labels("hit").inc();
+                    return cached.count;
+                }
+                segment.map.remove(key);
+            }
+            generation = segment.generation;
+        }
+
+        misses.increment();
+        InventoryMetrics.LOOKUP_CACHE_REQUESTS.labels("miss").inc();
+
+        // load outside the lock so a slow read doesn't hold up the segment
+        Integer count = loader.apply(key);
+        if (count == null) {
+            return null;
+        }
+
+        synchronized (segment) {
+            if (segment.generation == generation) {
+                segment.map.put(key, new CachedCount(count, System.nanoTime() + _ttlNanos));
+            }
+        }
+        return count;
+    }
+
+    void invalidate(int storeNumber, String productSku) {
+        InventoryKey key = new InventoryKey(storeNumber, productSku);
+        Segment segment = segmentFor(key);
+        synchronized (segment) {
+            segment.map.remove(key);
+            segment.generation++;
+        }
+    }
+
+    void invalidateAll() {
+        for (Segment segment : segments) {
+            synchronized (segment) {
+                segment.map.clear();
+                segment.generation++;
+            }
+        }
+    }
+
+    long getHitCount() {
+        return hits.sum();
+    }
+
+    long getMissCount() {
+        return misses.sum();
+    }
+
+    long getEvictionCount() {
+        return evictions.sum();
+    }
+
+    private Segment segmentFor(InventoryKey key) {
+        int h = key.hashCode();
+        h ^= (h >>> 16);
+        return segments[h & (SEGMENT_COUNT - 1)];
+    }
+
+}
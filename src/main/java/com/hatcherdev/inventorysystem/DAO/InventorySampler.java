@@ -0,0 +1,120 @@
+package com.hatcherdev.inventorysystem.DAO;
+
+import com.hatcherdev.inventorysystem.objects.Inventory;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Picks a random sample of inventory rows without sorting the table.
+ *
+ * Each seek picks a random store number between the table's lowest and
+ * highest, and a random SKU, and reads the next few rows at or after that
+ * ( store_no, product_sku ) in primary key order, wrapping to the start of
+ * the table if it runs off the end.  Seeking on the whole key rather than
+ * within one store means a seek that lands on a store with no rows moves
+ * on to the next store that has some, so a sparse store set, e.g., stores
+ * 1 and 1000, still gives a full sample.  SKUs are generated uniformly, so
+ * random seek points give a close to uniform sample within a store; the
+ * stores after big gaps in the store numbers are sampled more often.
+ * Each seek is a primary key range scan, so its cost doesn't grow with the
+ * size of the table the way ORDER BY random() does.
+ */
+class InventorySampler {
+
+    private static final Logger logger = LoggerFactory.getLogger(InventorySampler.class);
+
+    private static final String STORE_RANGE_SQL = "SELECT min(store_no), max(store_no) FROM inventory;";
+
+    private static final String SEEK_SQL = "SELECT store_no, product_sku, inventory_count FROM inventory " +
+            "WHERE (store_no, product_sku) >= (?, ?) " +
+            "ORDER BY store_no, product_sku LIMIT ?;";
+
+    private static final String WRAP_SQL = "SELECT store_no, product_sku, inventory_count FROM inventory " +
+            "ORDER BY store_no, product_sku LIMIT ?;";
+
+    // give up after this many seeks per requested row, e.g., when the table
+    // has fewer rows than were asked for
+    private static final int MAX_SEEKS_PER_ROW = 4;
+
+    private final InventoryDAO _inventoryDAO;
+    private final int _rowsPerSeek;
+    private final int _fetchSize;
+
+    InventorySampler(InventoryDAO inventoryDAO, int rowsPerSeek, int fetchSize) {
+        _inventoryDAO = inventoryDAO;
+        _rowsPerSeek = Math.max(1, rowsPerSeek);
+        _fetchSize = Math.max(1, fetchSize);
+    }
+
+    /**
+     * @return up to sampleSize distinct rows, or null if the table couldn't
+     * be read.
+     */
+    List<Inventory> sample(int sampleSize) {
+
+        int[] storeRange = new int[2];
+        boolean[] hasRows = new boolean[1];
+        int result = _inventoryDAO.runSQLQuery(STORE_RANGE_SQL, rs -> {
+            storeRange[0] = rs.getInt(1);
+            storeRange[1] = rs.getInt(2);
+            hasRows[0] = !rs.wasNull();
+        }, 1);
+        if (result < 0) {
+            return null;
+        }
+        if (!hasRows[0]) {
+            return new ArrayList<>();
+        }
+
+        // keyed by store and SKU so rows found by overlapping seeks only count once
+        Map<String, Inventory> sample = new LinkedHashMap<>(sampleSize * 2);
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        int maxSeeks = MAX_SEEKS_PER_ROW * sampleSize;
+
+        for (int seek = 0; seek < maxSeeks && sample.size() < sampleSize; seek++) {
+            int storeNumber = storeRange[0] == storeRange[1] ? storeRange[0] : random.nextInt(storeRange[0], storeRange[1] + 1);
+            int limit = Math.min(_rowsPerSeek, sampleSize - sample.size());
+
+            String startSku = _inventoryDAO.getRandomSKU();
+            int found = readRows(sample, sampleSize, SEEK_SQL, pstmt -> {
+                pstmt.setInt(1, storeNumber);
+                pstmt.setString(2, startSku);
+                pstmt.setInt(3, limit);
+            });
+            if (found < 0) {
+                return null;
+            }
+            if (found < limit) {
+                int wrapLimit = limit - found;
+                if (readRows(sample, sampleSize, WRAP_SQL, pstmt -> pstmt.setInt(1, wrapLimit)) < 0) {
+                    return null;
+                }
+            }
+        }
+
+        if (sample.size() < sampleSize) {
+            logger.debug("Sampled {} of {} requested inventory rows", sample.size(), sampleSize);
+        }
+
+        return new ArrayList<>(sample.values());
+    }
+
+    private int readRows(Map<String, Inventory> sample, int sampleSize, String sql, StatementBinder binder) {
+        return _inventoryDAO.runSQLQuery(sql, rs -> {
+            int storeNumber = rs.getInt("store_no");
+            String productSku = rs.getString("product_sku");
+            int inventoryCount = rs.getInt("inventory_count");
+            if (sample.size() < sampleSize) {
+                sample.putIfAbsent(storeNumber + "|" + productSku, new Inventory(storeNumber, productSku, inventoryCount));
+            }
+        }, _fetchSize, binder);
+    }
+
+}
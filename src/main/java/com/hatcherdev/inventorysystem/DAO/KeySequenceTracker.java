@@ -0,0 +1,181 @@
+package com.hatcherdev.inventorysystem.DAO;
+
+import com.hatcherdev.inventorysystem.metrics.InventoryMetrics;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * Tracks the key sequence numbers of events that have been applied, per
+ * producer and key, so that duplicate events can be skipped and missing
+ * ones counted even when a key's events arrive out of order on several
+ * partitions.
+ *
+ * For each key it keeps the highest sequence number seen and a bitmap of
+ * which of the WINDOW numbers below it have been seen, the same sliding
+ * window IPsec uses against replays.  A number that slides out of the
+ * window without being seen counts as a gap.  A number older than the
+ * window can't be checked, so it's applied and counted as late.
+ *
+ * The tracker may start part way through a key's events, e.g., after a
+ * restart, and with the key spread over partitions the events just before
+ * the first one seen can still arrive.  So only the first number counts as
+ * seen; the ones below it are accepted when they come, but aren't counted
+ * as gaps if they don't.
+ *
+ * Shared by all the consumer workers.  At most maxKeys producer and key
+ * pairs are tracked, spread over segments like InventoryLookupCache, each
+ * dropping its least recently used key when it's full.  A dropped key
+ * starts over the next time it's seen, so a duplicate of one of its older
+ * events would then be applied.
+ */
+class KeySequenceTracker {
+
+    static final int WINDOW = 64;
+
+    private static final int SEGMENT_COUNT = 16;
+
+    private final Map<Key, Window>[] segments;
+
+    @SuppressWarnings("unchecked")
+    KeySequenceTracker(int maxKeys) {
+        int segmentMaxKeys = Math.max(1, maxKeys / SEGMENT_COUNT);
+        segments = new Map[SEGMENT_COUNT];
+        for (int i = 0; i < SEGMENT_COUNT; i++) {
+            segments[i] = new LinkedHashMap<>(16, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<Key, Window> eldest) {
+                    return size() > segmentMaxKeys;
+                }
+            };
+        }
+    }
+
+    /**
+     * Note an event as applied.
+     *
+     * @return false if it's a duplicate of one already applied.
+     */
+    boolean accept(long producerId, int storeNumber, String productSku, long keySequence) {
+        Key key = new Key(producerId, storeNumber, productSku);
+        Map<Key, Window> segment = segmentFor(key);
+        Window window;
+        synchronized (segment) {
+            window = segment.computeIfAbsent(key, k -> new Window());
+        }
+        return window.accept(keySequence);
+    }
+
+    /**
+     * Forget an accepted event whose write failed, so it's accepted again
+     * when it's re-read.
+     */
+    void release(long producerId, int storeNumber, String productSku, long keySequence) {
+        Key key = new Key(producerId, storeNumber, productSku);
+        Map<Key, Window> segment = segmentFor(key);
+        Window window;
+        synchronized (segment) {
+            window = segment.get(key);
+        }
+        if (window != null) {
+            window.release(keySequence);
+        }
+    }
+
+    private static class Window {
+
+        private long highest = -1;
+        // bit i is set if highest - i has been seen
+        private long seen;
+        // bit i is set if highest - i is from before the first number seen,
+        // so isn't a gap if it never comes
+        private long beforeFirst;
+
+        synchronized boolean accept(long sequence) {
+            if (highest < 0) {
+                highest = sequence;
+                seen = 1L;
+                beforeFirst = ~1L;
+                return true;
+            }
+
+            if (sequence > highest) {
+                long shift = sequence - highest;
+                long accountedFor = seen | beforeFirst;
+                long gaps;
+                if (shift >= WINDOW) {
+                    gaps = (WINDOW - Long.bitCount(accountedFor)) + (shift - WINDOW);
+                    seen = 1L;
+                    beforeFirst = 0;
+                } else {
+                    gaps = shift - Long.bitCount(accountedFor >>> (WINDOW - shift));
+                    seen = (seen << shift) | 1L;
+                    beforeFirst <<= shift;
+                }
+                highest = sequence;
+                if (gaps > 0) {
+                    InventoryMetrics.KEY_SEQUENCE_ANOMALIES.labels("gap").inc(gaps);
+                }
+                return true;
+            }
+
+            long age = highest - sequence;
+            if (age >= WINDOW) {
+                InventoryMetrics.KEY_SEQUENCE_ANOMALIES.labels("late").inc();
+                return true;
+            }
+            long bit = 1L << age;
+            if ((seen & bit) != 0) {
+                InventoryMetrics.KEY_SEQUENCE_ANOMALIES.labels("duplicate").inc();
+                return false;
+            }
+            seen |= bit;
+            return true;
+        }
+
+        synchronized void release(long sequence) {
+            long age = highest - sequence;
+            if (age >= 0 && age < WINDOW) {
+                seen &= ~(1L << age);
+            }
+        }
+    }
+
+    private Map<Key, Window> segmentFor(Key key) {
+        int h = key.hashCode();
+        h ^= (h >>> 16);
+        return segments[h & (SEGMENT_COUNT - 1)];
+    }
+
+    private static final class Key {
+
+        private final long _producerId;
+        private final int _storeNumber;
+        private final String _productSku;
+
+        Key(long producerId, int storeNumber, String productSku) {
+            _producerId = producerId;
+            _storeNumber = storeNumber;
+            _productSku = productSku;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            Key other = (Key) o;
+            return _producerId == other._producerId && _storeNumber == other._storeNumber && _productSku.equals(other._productSku);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(_producerId, _storeNumber, _productSku);
+        }
+    }
+
+}
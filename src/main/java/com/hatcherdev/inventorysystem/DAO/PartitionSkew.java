@@ -0,0 +1,58 @@
+package com.hatcherdev.inventorysystem.DAO;
+
+import com.hatcherdev.inventorysystem.metrics.InventoryMetrics;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counts events per partition for one side of the topic ("producer" or
+ * "consumer") to show how evenly the partitioner spreads the load.  Skew
+ * is the busiest partition's count over the mean; 1.0 is perfectly even.
+ */
+class PartitionSkew {
+
+    private final String _side;
+    private final Map<Integer, LongAdder> counts = new ConcurrentHashMap<>();
+
+    PartitionSkew(String side) {
+        _side = side;
+    }
+
+    void record(int partition, int events) {
+        counts.computeIfAbsent(partition, p -> new LongAdder()).add(events);
+        InventoryMetrics.PARTITION_EVENTS.labels(_side, Integer.toString(partition)).inc(events);
+    }
+
+    /**
+     * @return the busiest partition's count over the mean, or 0 if nothing
+     * has been counted.
+     */
+    double getSkew() {
+        long total = 0;
+        long max = 0;
+        for (LongAdder count : counts.values()) {
+            long value = count.sum();
+            total += value;
+            max = Math.max(max, value);
+        }
+        if (total == 0) {
+            return 0;
+        }
+        return max / ((double) total / counts.size());
+    }
+
+    /**
+     * Update the skew gauge and describe the counts, e.g., for a log line.
+     */
+    String summarize() {
+        double skew = getSkew();
+        InventoryMetrics.PARTITION_SKEW.labels(_side).set(skew);
+        Map<Integer, Long> sorted = new TreeMap<>();
+        counts.forEach((partition, count) -> sorted.put(partition, count.sum()));
+        return String.format("%s events per partition %s, skew %.2f", _side, sorted, skew);
+    }
+
+}
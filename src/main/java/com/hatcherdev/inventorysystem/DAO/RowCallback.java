@@ -0,0 +1,15 @@
+package com.hatcherdev.inventorysystem.DAO;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+
+/**
+ * Handles one row of a query's result set.  The result set is positioned
+ * on the row; the callback shouldn't move it.
+ */
+@FunctionalInterface
+interface RowCallback {
+
+    void onRow(ResultSet rs) throws SQLException;
+
+}
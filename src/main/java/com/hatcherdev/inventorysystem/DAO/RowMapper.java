@@ -0,0 +1,15 @@
+package com.hatcherdev.inventorysystem.DAO;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+
+/**
+ * Turns the current row of a result set into an object.  The mapper
+ * shouldn't move the result set.
+ */
+@FunctionalInterface
+interface RowMapper<T> {
+
+    T map(ResultSet rs) throws SQLException;
+
+}
@@ -0,0 +1,18 @@
+package com.hatcherdev.inventorysystem.DAO;
+
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+
+/**
+ * Fills in a prepared statement's placeholders with the typed setters,
+ * e.g., {@code pstmt -> { pstmt.setInt(1, storeNumber); pstmt.setString(2, sku); }}.
+ * It's called again if the statement's transaction is retried.
+ */
+@FunctionalInterface
+interface StatementBinder {
+
+    StatementBinder NONE = pstmt -> { };
+
+    void bind(PreparedStatement pstmt) throws SQLException;
+
+}
@@ -0,0 +1,60 @@
+package com.hatcherdev.inventorysystem.DAO;
+
+import com.hatcherdev.inventorysystem.config.AppConfig;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A sampled log of the SQL statements being run, for seeing what the app
+ * is doing at write rates where logging every statement would cost more
+ * than the statements.  About one statement in db.statementLog.sampleEvery
+ * is logged at INFO, and every statement that takes longer than
+ * db.statementLog.slowMillis is logged at WARN; 0 turns either off.
+ *
+ * Statements are logged with their bound values, but the text is only
+ * built for the statements that get logged.  The logger is this class's,
+ * so the log can be turned up, down or sent elsewhere on its own.
+ */
+class StatementLog {
+
+    private static final Logger logger = LoggerFactory.getLogger(StatementLog.class);
+
+    private final int _sampleEvery;
+    private final long _slowNanos;
+
+    StatementLog(int sampleEvery, long slowMillis) {
+        _sampleEvery = Math.max(0, sampleEvery);
+        _slowNanos = slowMillis > 0 ? TimeUnit.MILLISECONDS.toNanos(slowMillis) : 0;
+    }
+
+    static StatementLog fromConfig() {
+        return new StatementLog(
+                AppConfig.getInt("db.statementLog.sampleEvery", 0),
+                AppConfig.getLong("db.statementLog.slowMillis", 1000));
+    }
+
+    /**
+     * @param statement the metrics label for the statement.
+     * @param sql what to log for it, e.g., the PreparedStatement, whose
+     * toString() has the bound values.
+     * @param nanos how long it took.
+     */
+    void record(String statement, Object sql, long nanos) {
+        if (_slowNanos > 0 && nanos >= _slowNanos) {
+            if (logger.isWarnEnabled()) {
+                logger.warn("Slow statement [{}] took {} ms: {}", statement, TimeUnit.NANOSECONDS.toMillis(nanos), sql);
+            }
+            return;
+        }
+        // a random one in N rather than a shared counter, so busy threads
+        // don't all contend on one cache line
+        if (_sampleEvery > 0 && ThreadLocalRandom.current().nextInt(_sampleEvery) == 0 && logger.isInfoEnabled()) {
+            logger.info("Sampled statement [{}] took {} us: {}", statement, TimeUnit.NANOSECONDS.toMicros(nanos), sql);
+        }
+    }
+
+}
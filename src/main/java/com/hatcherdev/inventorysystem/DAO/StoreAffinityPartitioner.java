@@ -0,0 +1,43 @@
+package com.hatcherdev.inventorysystem.DAO;
+
+import org.apache.kafka.clients.producer.Partitioner;
+import org.apache.kafka.common.Cluster;
+import org.apache.kafka.common.utils.Utils;
+
+import java.util.Map;
+
+/**
+ * Sends every event for a store to the same partition, chosen by hashing
+ * the store number from the "store_no|product_sku" key.  A consumer then
+ * sees all of a store's changes, which suits per-store processing, at the
+ * cost of one busy store making for one busy partition.
+ */
+public class StoreAffinityPartitioner implements Partitioner {
+
+    @Override
+    public void configure(Map<String, ?> configs) {
+    }
+
+    @Override
+    public int partition(String topic, Object key, byte[] keyBytes, Object value, byte[] valueBytes, Cluster cluster) {
+        int partitionCount = cluster.partitionsForTopic(topic).size();
+        return Utils.toPositive(Utils.murmur2(storePrefix(keyBytes))) % partitionCount;
+    }
+
+    // the key up to the '|', or the whole key if there isn't one
+    static byte[] storePrefix(byte[] keyBytes) {
+        for (int i = 0; i < keyBytes.length; i++) {
+            if (keyBytes[i] == '|') {
+                byte[] prefix = new byte[i];
+                System.arraycopy(keyBytes, 0, prefix, 0, i);
+                return prefix;
+            }
+        }
+        return keyBytes;
+    }
+
+    @Override
+    public void close() {
+    }
+
+}
@@ -0,0 +1,206 @@
+package com.hatcherdev.inventorysystem.DAO;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.hatcherdev.inventorysystem.config.AppConfig;
+import com.hatcherdev.inventorysystem.metrics.InventoryMetrics;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Savepoint;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Runs a unit of work in a transaction and retries it when CockroachDB
+ * reports a transaction retry error (SQL state 40001).
+ *
+ * With savepoints on, the work runs under CockroachDB's client-side retry
+ * protocol: SAVEPOINT cockroach_restart before the work, ROLLBACK TO
+ * SAVEPOINT on a retry error, and RELEASE SAVEPOINT to commit.  Rolling
+ * back to the savepoint keeps the transaction and its priority, so a
+ * retried transaction is more likely to win next time than a brand new
+ * one would be.
+ *
+ * Between attempts we back off for a random time between zero and an
+ * exponentially growing cap ("full jitter"), so that transactions that
+ * collided don't all come back at the same moment.  Retries also draw
+ * from a retry budget shared by the whole process; when contention is bad
+ * enough to use it up, transactions fail instead of piling more load on
+ * the hot rows.
+ */
+class TransactionRetryExecutor {
+
+    private static final Logger logger = LoggerFactory.getLogger(TransactionRetryExecutor.class);
+
+    static final String RETRY_SQL_STATE = "40001";
+    private static final String SAVEPOINT_NAME = "cockroach_restart";
+
+    /**
+     * The work to run in the transaction.  It's run again from the start
+     * on every retry, so it shouldn't have side effects outside the
+     * transaction that can't be repeated.
+     */
+    @FunctionalInterface
+    interface TransactionWork<T> {
+        T run(ConnectionPool.PooledConnection pooled) throws SQLException;
+    }
+
+    private final int maxRetries;
+    private final long baseBackoffNanos;
+    private final long maxBackoffNanos;
+    private final boolean useSavepoints;
+    private final RetryBudget budget;
+
+    TransactionRetryExecutor(int maxRetries, long baseBackoffMillis, long maxBackoffMillis, boolean useSavepoints, RetryBudget budget) {
+        this.maxRetries = maxRetries;
+        this.baseBackoffNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(1, baseBackoffMillis));
+        this.maxBackoffNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(baseBackoffMillis, maxBackoffMillis));
+        this.useSavepoints = useSavepoints;
+        this.budget = budget;
+    }
+
+    static TransactionRetryExecutor fromConfig() {
+        return new TransactionRetryExecutor(
+                AppConfig.getInt("db.retry.maxRetries", 8),
+                AppConfig.getLong("db.retry.baseBackoffMillis", 10),
+                AppConfig.getLong("db.retry.maxBackoffMillis", 2000),
+                AppConfig.getBoolean("db.retry.savepoints", true),
+                new RetryBudget(
+                        AppConfig.getInt("db.retry.budget.burst", 100),
+                        AppConfig.getInt("db.retry.budget.perSecond", 20)));
+    }
+
+    /**
+     * Run the work in a transaction on the given connection and commit it,
+     * retrying on transaction retry errors.
+     *
+     * @param statement the metrics label for the work.
+     * @return what the work returned on the attempt that committed.
+     * @throws SQLException the last error, if the work failed with an error
+     * that can't be retried, ran out of retries, or the retry budget was
+     * used up.
+     */
+    <T> T execute(ConnectionPool.PooledConnection pooled, String statement, TransactionWork<T> work) throws SQLException {
+
+        Connection connection = pooled.getConnection();
+
+        // We're managing the commit lifecycle ourselves so we can
+        // automatically issue transaction retries.
+        connection.setAutoCommit(false);
+
+        Savepoint savepoint = useSavepoints ? connection.setSavepoint(SAVEPOINT_NAME) : null;
+
+        int retryCount = 0;
+        while (true) {
+            try {
+                T result = work.run(pooled);
+                if (savepoint != null) {
+                    // CockroachDB commits when the savepoint is released,
+                    // so a retry error can still show up here.
+                    connection.releaseSavepoint(savepoint);
+                }
+                connection.commit();
+                return result;
+
+            } catch (SQLException e) {
+
+                if (!RETRY_SQL_STATE.equals(e.getSQLState())) {
+                    DAOBase.markBrokenIfConnectionError(pooled, e);
+                    rollbackQuietly(connection);
+                    throw e;
+                }
+                if (retryCount >= maxRetries) {
+                    logger.warn("hit max of {} retries for {}, aborting", maxRetries, statement);
+                    rollbackQuietly(connection);
+                    throw e;
+                }
+                if (!budget.tryAcquire()) {
+                    InventoryMetrics.SQL_RETRY_BUDGET_EXHAUSTED.labels(statement).inc();
+                    logger.warn("retry budget used up, not retrying {}", statement);
+                    rollbackQuietly(connection);
+                    throw e;
+                }
+
+                retryCount++;
+                InventoryMetrics.SQL_RETRIES.labels(statement).inc();
+                if (logger.isWarnEnabled()) {
+                    logger.warn("retryable exception occurred: sql state = [{}], message = [{}], retry counter = {}", e.getSQLState(), e.getMessage(), retryCount);
+                }
+
+                if (savepoint != null) {
+                    connection.rollback(savepoint);
+                } else {
+                    connection.rollback();
+                }
+
+                if (!backOff(retryCount, statement)) {
+                    // interrupted; give up and leave the flag set for the caller
+                    rollbackQuietly(connection);
+                    throw e;
+                }
+            }
+        }
+    }
+
+    /**
+     * @return false if the thread was interrupted while waiting.
+     */
+    private boolean backOff(int retryCount, String statement) {
+        long cap = Math.min(maxBackoffNanos, baseBackoffNanos << Math.min(retryCount - 1, 30));
+        long backoffNanos = ThreadLocalRandom.current().nextLong(cap + 1);
+
+        long start = System.nanoTime();
+        long deadline = start + backoffNanos;
+        long remaining = backoffNanos;
+        while (remaining > 0 && !Thread.currentThread().isInterrupted()) {
+            LockSupport.parkNanos(remaining);
+            remaining = deadline - System.nanoTime();
+        }
+        InventoryMetrics.SQL_RETRY_BACKOFF_SECONDS.labels(statement).inc((System.nanoTime() - start) / 1e9);
+
+        return !Thread.currentThread().isInterrupted();
+    }
+
+    private static void rollbackQuietly(Connection connection) {
+        try {
+            connection.rollback();
+        } catch (SQLException ignored) {
+            // the connection is returned to the pool either way, and the
+            // pool rolls back again or drops it
+        }
+    }
+
+    /**
+     * A token bucket of retries: it holds up to burst retries and refills
+     * at perSecond retries a second.
+     */
+    static class RetryBudget {
+
+        private final double burst;
+        private final double perNano;
+        private double tokens;
+        private long lastRefillNanos;
+
+        RetryBudget(int burst, int perSecond) {
+            this.burst = Math.max(1, burst);
+            this.perNano = Math.max(0, perSecond) / 1e9;
+            this.tokens = this.burst;
+            this.lastRefillNanos = System.nanoTime();
+        }
+
+        synchronized boolean tryAcquire() {
+            long now = System.nanoTime();
+            tokens = Math.min(burst, tokens + (now - lastRefillNanos) * perNano);
+            lastRefillNanos = now;
+            if (tokens < 1) {
+                return false;
+            }
+            tokens -= 1;
+            return true;
+        }
+    }
+
+}
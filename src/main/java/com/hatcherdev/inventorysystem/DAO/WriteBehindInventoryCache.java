@@ -0,0 +1,322 @@
+package com.hatcherdev.inventorysystem.DAO;
+
+import com.hatcherdev.inventorysystem.metrics.InventoryMetrics;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Holds inventory changes in memory and writes them to the inventory
+ * table in batches, so bursts of changes cost one upsert per key per
+ * flush instead of one per change.
+ *
+ * Changes are added without locking.  A background thread flushes every
+ * flushIntervalMillis, or sooner once flushThreshold keys have unwritten
+ * changes.  Reads are answered from memory: the count last read from or
+ * written to the table plus the changes not yet written.  The table's
+ * count is read again after reloadMillis, to pick up changes made by
+ * other processes, and on the next read after this process writes to the
+ * key without going through the cache (see reloadPersisted).  At most
+ * maxEntries keys are kept; when there are more, the cache flushes and then
+ * drops the least recently used keys.  close() flushes whatever is left.
+ */
+class WriteBehindInventoryCache implements AutoCloseable {
+
+    private static final Logger logger = LoggerFactory.getLogger(WriteBehindInventoryCache.class);
+
+    private static final class Entry {
+        // changes not yet written, updated without locking: the number of
+        // changes times 2^32 plus their summed delta, in one long so that a
+        // flush takes a change's count and delta together (see pack())
+        private final AtomicLong pending = new AtomicLong();
+        private volatile long lastAccessNanos;
+
+        // the row's count as of the last flush, guarded by flushLock
+        private int persistedCount;
+        private boolean persistedKnown;
+        private long persistedLoadedNanos;
+    }
+
+    private final InventoryDAO _inventoryDAO;
+    private final int _maxEntries;
+    private final int _flushThreshold;
+    private final long _reloadNanos;
+
+    private final Map<InventoryKey, Entry> entries = new ConcurrentHashMap<>();
+    private final AtomicInteger dirtyEntries = new AtomicInteger();
+    private final AtomicBoolean flushScheduled = new AtomicBoolean();
+
+    // Flushing holds the write lock from the moment changes are drained
+    // until the counts are updated, so a read never sees a change both in
+    // the table and in memory, or in neither.
+    private final ReentrantReadWriteLock flushLock = new ReentrantReadWriteLock();
+
+    private final ScheduledExecutorService flusher;
+
+    /**
+     * @param reloadMillis how long a count read from the table is used
+     * before reading it again; 0 means until it's evicted.
+     */
+    WriteBehindInventoryCache(InventoryDAO inventoryDAO, int maxEntries, int flushThreshold, long flushIntervalMillis, long reloadMillis) {
+        _inventoryDAO = inventoryDAO;
+        _maxEntries = Math.max(1, maxEntries);
+        _flushThreshold = Math.max(1, flushThreshold);
+        _reloadNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(0, reloadMillis));
+
+        flusher = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "inventory-write-behind");
+            t.setDaemon(true);
+            return t;
+        });
+        flusher.scheduleWithFixedDelay(this::flushAndEvict, flushIntervalMillis, flushIntervalMillis, TimeUnit.MILLISECONDS);
+    }
+
+    void add(int storeNumber, String productSku, int inventoryChange) {
+        // compute() holds the key's bin lock, so eviction can't drop the
+        // entry between looking it up and adding to it
+        entries.compute(new InventoryKey(storeNumber, productSku), (key, entry) -> {
+            if (entry == null) {
+                entry = new Entry();
+            }
+            if (pendingEvents(entry.pending.getAndAdd(pack(1, inventoryChange))) == 0) {
+                dirtyEntries.incrementAndGet();
+            }
+            entry.lastAccessNanos = System.nanoTime();
+            return entry;
+        });
+
+        if (dirtyEntries.get() >= _flushThreshold || entries.size() > _maxEntries) {
+            scheduleFlush();
+        }
+    }
+
+    private void scheduleFlush() {
+        if (flushScheduled.compareAndSet(false, true)) {
+            flusher.execute(this::flushAndEvict);
+        }
+    }
+
+    /**
+     * @return the current count for the key, including changes not yet
+     * written, or null if it couldn't be read from the table.
+     */
+    Integer getInventoryCount(int storeNumber, String productSku) {
+        InventoryKey key = new InventoryKey(storeNumber, productSku);
+
+        if (entries.size() > _maxEntries) {
+            scheduleFlush();
+        }
+
+        flushLock.readLock().lock();
+        try {
+            Entry entry = entries.computeIfAbsent(key, k -> new Entry());
+            long now = System.nanoTime();
+            entry.lastAccessNanos = now;
+            synchronized (entry) {
+                // flushes are held off by the read lock, so the table has
+                // none of the pending changes
+                if (!entry.persistedKnown || (_reloadNanos > 0 && now - entry.persistedLoadedNanos >= _reloadNanos)) {
+                    Integer count = _inventoryDAO.loadInventoryCount(storeNumber, productSku);
+                    if (count == null) {
+                        return null;
+                    }
+                    entry.persistedCount = count;
+                    entry.persistedKnown = true;
+                    entry.persistedLoadedNanos = now;
+                }
+                return entry.persistedCount + pendingDelta(entry.pending.get());
+            }
+        } finally {
+            flushLock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Have the next read of each of the batch's keys get the count from the
+     * table again, after the batch was written to the table without going
+     * through this cache, e.g., by the event consumer.
+     */
+    void reloadPersisted(InventoryDeltaBatch batch) {
+        flushLock.readLock().lock();
+        try {
+            for (InventoryDeltaBatch.Delta delta : batch.getDeltas()) {
+                Entry entry = entries.get(new InventoryKey(delta.getStoreNumber(), delta.getProductSku()));
+                if (entry != null) {
+                    synchronized (entry) {
+                        entry.persistedKnown = false;
+                    }
+                }
+            }
+        } finally {
+            flushLock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Have every key's next read get the count from the table again, e.g.,
+     * after a bulk load.
+     */
+    void reloadAllPersisted() {
+        flushLock.readLock().lock();
+        try {
+            for (Entry entry : entries.values()) {
+                synchronized (entry) {
+                    entry.persistedKnown = false;
+                }
+            }
+        } finally {
+            flushLock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Write every pending change to the table.
+     *
+     * @return false if the write failed; the changes are kept for the next flush.
+     */
+    boolean flush() {
+        flushLock.writeLock().lock();
+        try {
+            InventoryDeltaBatch batch = new InventoryDeltaBatch();
+            List<Drained> drained = new ArrayList<>();
+
+            for (Map.Entry<InventoryKey, Entry> e : entries.entrySet()) {
+                Entry entry = e.getValue();
+                if (entry.pending.get() == 0) {
+                    continue;
+                }
+                long pending = entry.pending.getAndSet(0);
+                int events = pendingEvents(pending);
+                int delta = pendingDelta(pending);
+                dirtyEntries.decrementAndGet();
+                batch.add(e.getKey().getStoreNumber(), e.getKey().getProductSku(), delta, events);
+                drained.add(new Drained(entry, delta, events));
+            }
+
+            if (batch.isEmpty()) {
+                return true;
+            }
+
+            InventoryMetrics.BATCH_SIZE.labels("write_behind_rows").observe(batch.size());
+            int result = _inventoryDAO.writeInventoryChanges(batch);
+
+            for (Drained d : drained) {
+                if (result < 0) {
+                    // put the changes back so they're written next time
+                    if (pendingEvents(d.entry.pending.getAndAdd(pack(d.events, d.delta))) == 0) {
+                        dirtyEntries.incrementAndGet();
+                    }
+                } else if (d.entry.persistedKnown) {
+                    d.entry.persistedCount += d.delta;
+                }
+            }
+
+            if (result < 0) {
+                logger.error("Write-behind flush of {} inventory rows failed, will retry", batch.size());
+                return false;
+            }
+            return true;
+        } finally {
+            flushLock.writeLock().unlock();
+        }
+    }
+
+    // The delta is added as a signed number below the count, so the low
+    // 32 bits read as an int are the delta and what's left above them is
+    // the count, as long as the summed delta fits in an int.
+    private static long pack(int events, int delta) {
+        return ((long) events << 32) + delta;
+    }
+
+    private static int pendingDelta(long pending) {
+        return (int) pending;
+    }
+
+    private static int pendingEvents(long pending) {
+        return (int) ((pending - (int) pending) >> 32);
+    }
+
+    private static final class Drained {
+        private final Entry entry;
+        private final int delta;
+        private final int events;
+
+        private Drained(Entry entry, int delta, int events) {
+            this.entry = entry;
+            this.delta = delta;
+            this.events = events;
+        }
+    }
+
+    private void flushAndEvict() {
+        flushScheduled.set(false);
+        try {
+            if (flush() && entries.size() > _maxEntries) {
+                evict();
+            }
+        } catch (RuntimeException e) {
+            // keep the scheduled flushes running
+            logger.error("Write-behind flush failed: {}", e.toString());
+        }
+    }
+
+    // Drop the least recently used keys with nothing left to write until
+    // the cache is 10% under its limit, so eviction doesn't run on every add.
+    private void evict() {
+        int target = _maxEntries - _maxEntries / 10;
+        int toRemove = entries.size() - target;
+        if (toRemove <= 0) {
+            return;
+        }
+
+        List<Map.Entry<InventoryKey, Entry>> candidates = new ArrayList<>(entries.entrySet());
+        candidates.sort(Comparator.comparingLong(e -> e.getValue().lastAccessNanos));
+
+        int removed = 0;
+        for (Map.Entry<InventoryKey, Entry> candidate : candidates) {
+            if (removed >= toRemove) {
+                break;
+            }
+            boolean[] evicted = {false};
+            entries.computeIfPresent(candidate.getKey(), (key, entry) -> {
+                if (entry.pending.get() != 0) {
+                    return entry;
+                }
+                evicted[0] = true;
+                return null;
+            });
+            if (evicted[0]) {
+                removed++;
+            }
+        }
+        logger.debug("Evicted {} inventory keys from the write-behind cache", removed);
+    }
+
+    @Override
+    public void close() {
+        flusher.shutdown();
+        try {
+            flusher.awaitTermination(30, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+
+        if (!flush() && !flush()) {
+            logger.error("Unable to write {} inventory rows from the write-behind cache", dirtyEntries.get());
+        }
+    }
+
+}
@@ -2,75 +2,261 @@ package com.hatcherdev.inventorysystem;
 
 import com.hatcherdev.inventorysystem.DAO.InventoryDAO.StorageDestination;
 import com.hatcherdev.inventorysystem.bizlogic.InventoryService;
+import com.hatcherdev.inventorysystem.config.AppConfig;
+import com.hatcherdev.inventorysystem.metrics.InventoryMetrics;
 
-//import org.slf4j.Logger;
-//import org.slf4j.LoggerFactory;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import ch.qos.logback.classic.LoggerContext;
+import org.slf4j.ILoggerFactory;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 public class InventoryCLI {
 
-    //private static final Logger logger = LoggerFactory.getLogger(InventoryCLI.class);
+    private static final Logger logger = LoggerFactory.getLogger(InventoryCLI.class);
+
+    private static final String USAGE = String.join(System.lineSeparator(),
+            "Usage: InventoryCLI <feature> [file] [options]",
+            "",
+            "Features:",
+            "  1  create random inventory records",
+            "  2  create inventory updates for existing records",
+            "  3  process inventory events into the database",
+            "  4  import inventory records from a CSV file (file required)",
+            "  5  export inventory records to a CSV file (file required)",
+            "",
+            "Options:",
+            "  --records <n>            records to create or update (inventory.records)",
+            "  --destination <dest>     DATABASE, KAFKA or FILE (inventory.destination)",
+            "  --config <file>          read settings from a properties file",
+            "  --set <key>=<value>      override any setting, e.g., --set kafka.bootstrapServers=broker:9092",
+            "  --daemon                 keep running until stopped: features 1 and 2 repeat every",
+            "                           daemon.intervalMillis and feature 3 consumes continuously");
 
     public enum Feature {
         NoFeatureAssigned,
         CreateRandomInventoryRecords,
         CreateInventoryUpdateRecords,
-        ProcessInventoryRecordsFromKafkaTopic
+        ProcessInventoryRecordsFromKafkaTopic,
+        ImportInventoryRecordsFromFile,
+        ExportInventoryRecordsToFile
     }
 
     public static void main(String[] args) {
 
-        if (args.length > 1) {
-            System.out.println("Invalid number of arguments.");
-            System.exit(-1);
-        }
-
-        String featureArg = args[0];
-        int featureInt;
         Feature feature = Feature.NoFeatureAssigned;
-        try{
-            featureInt = Integer.parseInt(featureArg);
-            if (featureInt == 1) {
-                feature = Feature.CreateRandomInventoryRecords;
-            } else if (featureInt == 2) {
-                feature = Feature.CreateInventoryUpdateRecords;
-            } else if (featureInt == 3) {
-                feature = Feature.ProcessInventoryRecordsFromKafkaTopic;
+        Path filePath = null;
+        boolean daemon = false;
+
+        for (int i = 0; i < args.length; i++) {
+            String arg = args[i];
+            if (arg.equals("--daemon")) {
+                daemon = true;
+            } else if (arg.equals("--records")) {
+                AppConfig.set("inventory.records", optionValue(args, ++i, arg));
+            } else if (arg.equals("--destination")) {
+                AppConfig.set("inventory.destination", optionValue(args, ++i, arg));
+            } else if (arg.equals("--config")) {
+                Path configFile = Paths.get(optionValue(args, ++i, arg));
+                try {
+                    AppConfig.load(configFile);
+                } catch (IOException e) {
+                    exitWithUsage("Unable to read settings from " + configFile + ": " + e.getMessage());
+                }
+            } else if (arg.equals("--set")) {
+                String setting = optionValue(args, ++i, arg);
+                int equals = setting.indexOf('=');
+                if (equals <= 0) {
+                    exitWithUsage("--set takes a <key>=<value> pair.");
+                }
+                AppConfig.set(setting.substring(0, equals), setting.substring(equals + 1));
+            } else if (arg.startsWith("--")) {
+                exitWithUsage("Unknown option " + arg + ".");
+            } else if (feature == Feature.NoFeatureAssigned) {
+                feature = parseFeature(arg);
+            } else if (filePath == null) {
+                filePath = Paths.get(arg);
             } else {
-                System.out.println("Invalid number passed for first argument -- should be 1, 2, or 3.");
-                System.exit(-1);
+                exitWithUsage("Invalid number of arguments.");
             }
         }
-        catch(Exception e){
-            System.out.println("Invalid number passed for first argument -- should be 1, 2, or 3.");
-            System.exit(-1);
+
+        if (feature == Feature.NoFeatureAssigned) {
+            exitWithUsage("No feature given.");
         }
 
-        //TODO: get from args??
-        int numberOfInventoryRecords = 10;
-        //TODO: get this value from args
-        //StorageDestination storageDestination = StorageDestination.DATABASE;
-        StorageDestination storageDestination = StorageDestination.KAFKA;
+        // import and export take the CSV file's path as the second argument
+        boolean fileFeature = feature == Feature.ImportInventoryRecordsFromFile || feature == Feature.ExportInventoryRecordsToFile;
+        if (fileFeature && filePath == null) {
+            exitWithUsage("Import and export need a file path as the second argument.");
+        }
+        if (!fileFeature && filePath != null) {
+            exitWithUsage("Only import and export take a file path.");
+        }
+        if (fileFeature && daemon) {
+            exitWithUsage("--daemon only applies to features 1, 2 and 3.");
+        }
+
+        int numberOfInventoryRecords = AppConfig.getInt("inventory.records", 10);
+        StorageDestination storageDestination = null;
+        try {
+            storageDestination = StorageDestination.valueOf(AppConfig.getString("inventory.destination", "KAFKA").toUpperCase());
+        } catch (IllegalArgumentException e) {
+            exitWithUsage("Invalid destination -- should be DATABASE, KAFKA or FILE.");
+        }
 
         System.out.println("Welcome to the Inventory Update App!");
         System.out.println();
 
         InventoryService inventoryService = new InventoryService();
 
-        if (feature == Feature.CreateRandomInventoryRecords) {
+        // On SIGTERM or Ctrl-C, let the running work finish what it has in
+        // hand (in-flight batches written, consumer offsets committed)
+        // before the service flushes the producer and closes its pools.
+        CountDownLatch workFinished = new CountDownLatch(1);
+        long shutdownTimeoutMillis = AppConfig.getLong("daemon.shutdownTimeoutMillis", 30000);
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            if (workFinished.getCount() > 0) {
+                logger.info("Shutting down, waiting up to {} ms for in-flight work to finish", shutdownTimeoutMillis);
+            }
+            inventoryService.stop();
+            try {
+                if (!workFinished.await(shutdownTimeoutMillis, TimeUnit.MILLISECONDS)) {
+                    logger.warn("In-flight work didn't finish in time, closing anyway");
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            inventoryService.close();
+            // logging is asynchronous, so write out what's still queued
+            ILoggerFactory loggerFactory = LoggerFactory.getILoggerFactory();
+            if (loggerFactory instanceof LoggerContext) {
+                ((LoggerContext) loggerFactory).stop();
+            }
+        }, "inventory-shutdown"));
+
+        int exitStatus = 0;
+        if (daemon) {
+            InventoryMetrics.startHttpServer();
+            runDaemon(inventoryService, feature, numberOfInventoryRecords, storageDestination);
+            inventoryService.close();
+            System.out.print("Inventory service stopped.");
+        } else if (feature == Feature.CreateRandomInventoryRecords) {
+            InventoryMetrics.registerJvmMetrics();
             inventoryService.createRandomInventoryRecords(numberOfInventoryRecords, storageDestination);
+            inventoryService.close();
+            InventoryMetrics.push("inventory_create_random_records");
             System.out.print("Inventory record creation successful.");
         } else if (feature == Feature.CreateInventoryUpdateRecords) {
             //test running updates to existing items
+            InventoryMetrics.registerJvmMetrics();
             inventoryService.createInventoryUpdateRecords(numberOfInventoryRecords, storageDestination);
+            inventoryService.close();
+            InventoryMetrics.push("inventory_create_update_records");
             System.out.print("Inventory record update successful.");
         } else if (feature == Feature.ProcessInventoryRecordsFromKafkaTopic) {
+            //consuming can run for a long time, so serve metrics for scraping
+            InventoryMetrics.startHttpServer();
             inventoryService.processInventoryEvents(numberOfInventoryRecords);
+            inventoryService.close();
             System.out.print("Processed inventory events successfully.");
+        } else if (feature == Feature.ImportInventoryRecordsFromFile) {
+            InventoryMetrics.registerJvmMetrics();
+            long rows = inventoryService.importInventoryRecords(filePath);
+            inventoryService.close();
+            InventoryMetrics.push("inventory_import_records");
+            if (rows < 0) {
+                System.out.println("Inventory import failed.");
+                exitStatus = -1;
+            } else {
+                System.out.print("Imported " + rows + " inventory records.");
+            }
+        } else if (feature == Feature.ExportInventoryRecordsToFile) {
+            InventoryMetrics.registerJvmMetrics();
+            long rows = inventoryService.exportInventoryRecords(filePath);
+            inventoryService.close();
+            InventoryMetrics.push("inventory_export_records");
+            if (rows < 0) {
+                System.out.println("Inventory export failed.");
+                exitStatus = -1;
+            } else {
+                System.out.print("Exported " + rows + " inventory records.");
+            }
+        }
+        if (exitStatus == 0) {
+            System.out.println("  Goodbye!!");
         }
-        System.out.println("  Goodbye!!");
 
-        System.exit(0);
+        workFinished.countDown();
+        System.exit(exitStatus);
 
     }
 
+    /**
+     * Keep one service, and so one set of pools and clients, working until
+     * it's stopped.
+     */
+    private static void runDaemon(InventoryService inventoryService, Feature feature, int numberOfInventoryRecords, StorageDestination storageDestination) {
+
+        logger.info("Running {} as a service until stopped", feature);
+
+        if (feature == Feature.ProcessInventoryRecordsFromKafkaTopic) {
+            inventoryService.processInventoryEvents(true);
+            return;
+        }
+
+        long intervalMillis = Math.max(0, AppConfig.getLong("daemon.intervalMillis", 1000));
+        while (!inventoryService.isStopping()) {
+            if (feature == Feature.CreateRandomInventoryRecords) {
+                inventoryService.createRandomInventoryRecords(numberOfInventoryRecords, storageDestination);
+            } else {
+                inventoryService.createInventoryUpdateRecords(numberOfInventoryRecords, storageDestination);
+            }
+            if (inventoryService.awaitStop(intervalMillis)) {
+                break;
+            }
+        }
+    }
+
+    private static Feature parseFeature(String featureArg) {
+        int featureInt = 0;
+        try {
+            featureInt = Integer.parseInt(featureArg);
+        } catch (NumberFormatException e) {
+            // reported below
+        }
+        if (featureInt == 1) {
+            return Feature.CreateRandomInventoryRecords;
+        } else if (featureInt == 2) {
+            return Feature.CreateInventoryUpdateRecords;
+        } else if (featureInt == 3) {
+            return Feature.ProcessInventoryRecordsFromKafkaTopic;
+        } else if (featureInt == 4) {
+            return Feature.ImportInventoryRecordsFromFile;
+        } else if (featureInt == 5) {
+            return Feature.ExportInventoryRecordsToFile;
+        }
+        exitWithUsage("Invalid number passed for first argument -- should be 1, 2, 3, 4, or 5.");
+        return Feature.NoFeatureAssigned;
+    }
+
+    private static String optionValue(String[] args, int index, String option) {
+        if (index >= args.length) {
+            exitWithUsage(option + " needs a value.");
+        }
+        return args[index];
+    }
+
+    private static void exitWithUsage(String message) {
+        System.out.println(message);
+        System.out.println();
+        System.out.println(USAGE);
+        System.exit(-1);
+    }
+
 }
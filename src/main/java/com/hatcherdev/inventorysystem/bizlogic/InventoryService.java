@@ -1,81 +1,241 @@
 package com.hatcherdev.inventorysystem.bizlogic;
 
 import com.hatcherdev.inventorysystem.DAO.InventoryDAO;
+import com.hatcherdev.inventorysystem.config.AppConfig;
 import com.hatcherdev.inventorysystem.objects.Inventory;
+import com.hatcherdev.inventorysystem.objects.InventoryColumns;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.EnumMap;
 import java.util.List;
-
-public class InventoryService {
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Runs the inventory workloads.  A service keeps one InventoryDAO per
+ * storage destination for as long as it's open, so running work again
+ * reuses the same connection pool, Kafka clients and caches instead of
+ * setting them up each time.
+ *
+ * stop() asks running work to finish what it has in hand and return;
+ * close() then flushes and releases everything the DAOs hold.
+ */
+public class InventoryService implements AutoCloseable {
 
     private static final Logger logger = LoggerFactory.getLogger(InventoryService.class);
 
     private final int DEFAULT_STORE_NUMBER = 1;
 
-    private InventoryDAO inventoryDAO;
+    private final Map<InventoryDAO.StorageDestination, InventoryDAO> inventoryDAOs = new EnumMap<>(InventoryDAO.StorageDestination.class);
+    private final CountDownLatch stopLatch = new CountDownLatch(1);
+    private volatile LoadGenerator activeLoadGenerator;
+    private volatile boolean stopping;
+
+    private synchronized InventoryDAO getInventoryDAO(InventoryDAO.StorageDestination storageDestination) {
+        return inventoryDAOs.computeIfAbsent(storageDestination, destination -> new InventoryDAO(destination, DEFAULT_STORE_NUMBER));
+    }
+
+    /**
+     * Ask running work to stop.  Load runs start no new operations,
+     * consumers write and commit the events they've already read, and
+     * later calls return without doing anything.
+     */
+    public void stop() {
+        stopping = true;
+        stopLatch.countDown();
+        LoadGenerator loadGenerator = activeLoadGenerator;
+        if (loadGenerator != null) {
+            loadGenerator.stop();
+        }
+        synchronized (this) {
+            for (InventoryDAO inventoryDAO : inventoryDAOs.values()) {
+                inventoryDAO.stopProcessingInventoryEvents();
+            }
+        }
+    }
+
+    public boolean isStopping() {
+        return stopping;
+    }
+
+    /**
+     * Wait until stop() is called or the time passes.
+     *
+     * @return true if the service is stopping.
+     */
+    public boolean awaitStop(long millis) {
+        try {
+            return stopLatch.await(millis, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return true;
+        }
+    }
+
+    /**
+     * Flush and tear down the DAOs: unsent events go to Kafka or the file
+     * event log, the write-behind cache is written, and the connection
+     * pools are closed.  Calling it again does nothing.
+     */
+    @Override
+    public synchronized void close() {
+        for (InventoryDAO inventoryDAO : inventoryDAOs.values()) {
+            inventoryDAO.teardown();
+        }
+        inventoryDAOs.clear();
+    }
+
+    private long runLoad(LoadGenerator loadGenerator, long totalRecords, int recordsPerOperation, boolean striped, LoadGenerator.Operation operation) {
+        // published before stopping is checked, the opposite order to stop()
+        activeLoadGenerator = loadGenerator;
+        if (stopping) {
+            loadGenerator.stop();
+        }
+        try {
+            return loadGenerator.run(totalRecords, recordsPerOperation, striped, operation);
+        } finally {
+            activeLoadGenerator = null;
+        }
+    }
 
     public void createRandomInventoryRecords(int numberOfInventoryRecordsToCreate, InventoryDAO.StorageDestination storageDestination) {
 
-        inventoryDAO = new InventoryDAO(storageDestination, DEFAULT_STORE_NUMBER);
+        InventoryDAO inventoryDAO = getInventoryDAO(storageDestination);
 
         //test inserting random(ish) values into the table
-        int upperRange = numberOfInventoryRecordsToCreate;
-        logger.info("Inventory inserts completed - 0 of " + Integer.toString(upperRange));
-        for (int i = 0; i < upperRange; i++) {
-            inventoryDAO.storeInventoryChange();
-            if (i > 0 && i % 1000 == 0) {
-                logger.info("Inventory inserts completed - " + Integer.toString(i) + " of " + Integer.toString(upperRange));
+        int recordsPerTransaction = inventoryDAO.getRecordsPerTransaction();
+        LoadGenerator loadGenerator = new LoadGenerator("Inventory inserts");
+        int workers = loadGenerator.getConcurrency();
+        WorkloadGenerator workload = WorkloadGenerator.fromConfig(DEFAULT_STORE_NUMBER, workers);
+
+        // With lanes, operations are striped over the workers, so worker w
+        // runs operations w, w + workers and so on.  Lane l belongs to
+        // worker l % workers, which takes its lanes in turn, so with at
+        // least as many lanes as workers no two workers write the same
+        // stores.  With fewer lanes, worker w writes lane w % lanes, which
+        // it shares with the other workers that map to it.
+        int lanes = workload.getLaneCount();
+        AtomicLongArray laneRecords = new AtomicLongArray(lanes);
+        runLoad(loadGenerator, numberOfInventoryRecordsToCreate, recordsPerTransaction, lanes > 1, (firstRecord, recordCount) -> {
+            long operation = firstRecord / recordsPerTransaction;
+            int worker = (int) (operation % workers);
+            int lane;
+            if (lanes <= workers) {
+                lane = worker % lanes;
+            } else {
+                // the worker's lanes are worker, worker + workers, ... below lanes
+                int workerLanes = (lanes - worker + workers - 1) / workers;
+                lane = worker + (int) (operation / workers % workerLanes) * workers;
             }
-        }
-
-        inventoryDAO.teardown();
+            WorkloadGenerator.Changes changes = workload.changes(firstRecord, lane);
+            List<Inventory> inventoryChanges = new ArrayList<>(recordCount);
+            for (int i = 0; i < recordCount; i++) {
+                inventoryChanges.add(changes.next());
+            }
+            if (inventoryDAO.storeInventoryChanges(inventoryChanges) < 0) {
+                return false;
+            }
+            laneRecords.addAndGet(lane, recordCount);
+            return true;
+        });
 
-        logger.info("Inventory inserts completed - " + Integer.toString(upperRange) + " of " + Integer.toString(upperRange));
+        if (lanes > 1) {
+            for (int lane = 0; lane < lanes; lane++) {
+                logger.info("Lane {} ({}) - {} records", lane, workload.describeLane(lane), laneRecords.get(lane));
+            }
+        }
 
     }
 
     public void createInventoryUpdateRecords(int numberOfInventoryRecordsToCreate, InventoryDAO.StorageDestination storageDestination) {
 
-        inventoryDAO = new InventoryDAO(storageDestination, DEFAULT_STORE_NUMBER);
+        InventoryDAO inventoryDAO = getInventoryDAO(storageDestination);
 
-        List<Inventory> inventoryItems = inventoryDAO.getInventoryRecords(numberOfInventoryRecordsToCreate);
+        List<Inventory> sampledItems = inventoryDAO.getInventoryRecords(numberOfInventoryRecordsToCreate);
 
-        if (inventoryItems == null) {
+        if (sampledItems == null) {
             logger.info("No inventory items to select from.  Run random insert first.");
             return;
         }
 
+        // long duration runs keep the sample for the whole run, so keep it compact
+        InventoryColumns inventoryItems = InventoryColumns.from(sampledItems);
+
         int itemCount = inventoryItems.size();
         if (itemCount < numberOfInventoryRecordsToCreate) {
-            logger.info("Fewer inventory items available (" + Integer.toString(itemCount) + ") than were requested (" + Integer.toString(numberOfInventoryRecordsToCreate) + ").");
+            logger.info("Fewer inventory items available ({}) than were requested ({}).", itemCount, numberOfInventoryRecordsToCreate);
             return;
         }
-        System.out.println("Inventory updates completed - 0 of " + Integer.toString(itemCount));
-        for (int i = 0; i < itemCount; i++) {
-            Inventory inventoryItem = inventoryItems.get(i);
-            inventoryDAO.storeInventoryChange(inventoryItem, true);
 
-            if (i > 0 && i % 1000 == 0) {
-                logger.info("Inventory updates completed - " + Integer.toString(i) + " of " + Integer.toString(itemCount));
+        // with load.durationSeconds set, the sampled items are updated over and over until time is up
+        int recordsPerTransaction = inventoryDAO.getRecordsPerTransaction();
+        LoadGenerator loadGenerator = new LoadGenerator("Inventory updates");
+        // the items come from the sample; only the deltas come from the workload
+        WorkloadGenerator workload = WorkloadGenerator.fromConfig(DEFAULT_STORE_NUMBER, loadGenerator.getConcurrency());
+        runLoad(loadGenerator, itemCount, recordsPerTransaction, false, (firstRecord, recordCount) -> {
+            WorkloadGenerator.Changes changes = workload.changes(firstRecord, 0);
+            List<Inventory> inventoryChanges = new ArrayList<>(recordCount);
+            for (int i = 0; i < recordCount; i++) {
+                int index = (int) ((firstRecord + i) % itemCount);
+                inventoryChanges.add(new Inventory(inventoryItems.getStoreNumber(index), inventoryItems.getProductSku(index), changes.nextDelta()));
             }
-        }
+            return inventoryDAO.storeInventoryChanges(inventoryChanges) >= 0;
+        });
+    }
+
+    public long importInventoryRecords(Path file) {
+
+        InventoryDAO inventoryDAO = getInventoryDAO(InventoryDAO.StorageDestination.DATABASE);
 
-        inventoryDAO.teardown();
+        long start = System.nanoTime();
+        long rows = inventoryDAO.importInventory(file);
+        logTransferRate("Imported", rows, file, start);
 
-        logger.info("Inventory updates completed - " + Integer.toString(itemCount) + " of " + Integer.toString(itemCount));
+        return rows;
     }
 
-    public void processInventoryEvents(int numberOfInventoryRecords) {
+    public long exportInventoryRecords(Path file) {
 
-        inventoryDAO = new InventoryDAO(InventoryDAO.StorageDestination.DATABASE, DEFAULT_STORE_NUMBER);
+        InventoryDAO inventoryDAO = getInventoryDAO(InventoryDAO.StorageDestination.DATABASE);
 
-        inventoryDAO.processInventoryEvents(numberOfInventoryRecords);
+        long start = System.nanoTime();
+        long rows = inventoryDAO.exportInventory(file);
+        logTransferRate("Exported", rows, file, start);
 
-        inventoryDAO.teardown();
+        return rows;
+    }
+
+    private void logTransferRate(String verb, long rows, Path file, long startNanos) {
+        if (rows < 0) {
+            return;
+        }
+        double seconds = Math.max(1e-9, (System.nanoTime() - startNanos) / 1e9);
+        logger.info(String.format("%s %d inventory records (%s) in %.1f s - %.0f rows/sec", verb, rows, file, seconds, rows / seconds));
+    }
+
+    public void processInventoryEvents(int numberOfInventoryRecords) {
+        processInventoryEvents(AppConfig.getBoolean("kafka.consumer.continuous", false));
+    }
+
+    /**
+     * @param continuous keep consuming until stop() is called, rather than
+     * returning once there are no more events.
+     */
+    public void processInventoryEvents(boolean continuous) {
+
+        InventoryDAO inventoryDAO = getInventoryDAO(InventoryDAO.StorageDestination.DATABASE);
+        if (stopping) {
+            // stop() may have run before this DAO existed
+            inventoryDAO.stopProcessingInventoryEvents();
+        }
 
-        logger.info("Inventory events processed - " + Integer.toString(numberOfInventoryRecords) + " of " + Integer.toString(numberOfInventoryRecords));
+        inventoryDAO.processInventoryEvents(AppConfig.getInt("kafka.consumer.workers", 0), continuous);
 
     }
 }
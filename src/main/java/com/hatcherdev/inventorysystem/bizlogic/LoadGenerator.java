@@ -0,0 +1,259 @@
+package com.hatcherdev.inventorysystem.bizlogic;
+
+import com.hatcherdev.inventorysystem.config.AppConfig;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Runs an operation from many threads at once, optionally at a fixed rate,
+ * until a number of records have been written or a time limit passes.
+ *
+ * Settings:
+ *   load.concurrency          threads running operations
+ *   load.targetRecordsPerSecond   records per second to aim for; 0 means as fast as possible
+ *   load.maxLagMillis         how far a rate-limited run may fall behind its schedule
+ *                             before the missed start times are skipped
+ *   load.durationSeconds      run for this long instead of stopping at the record count; 0 means use the count
+ *   load.executor             "virtual" to use virtual threads when the JVM has them, otherwise platform threads
+ *
+ * Throughput is logged every second and a latency summary is logged at
+ * the end.  In a rate-limited run, an operation's latency is measured from
+ * the time it was meant to start, not when a worker got to it, so time
+ * spent waiting behind slow operations shows up in the latencies instead
+ * of being hidden (coordinated omission).  Operations that fail are counted separately and left out of
+ * the throughput and latencies, so a run against a broken cluster doesn't
+ * look like a fast one.
+ */
+class LoadGenerator {
+
+    private static final Logger logger = LoggerFactory.getLogger(LoadGenerator.class);
+
+    /**
+     * One operation, writing records [firstRecord, firstRecord + recordCount).
+     */
+    @FunctionalInterface
+    interface Operation {
+        /**
+         * @return false if the records weren't written.
+         */
+        boolean run(long firstRecord, int recordCount);
+    }
+
+    private final String _name;
+    private final int _concurrency;
+    private final long _targetRecordsPerSecond;
+    private final long _maxLagNanos;
+    private final long _durationSeconds;
+    private final String _executorType;
+
+    private final AtomicLong nextRecord = new AtomicLong();
+    private final AtomicLong completedRecords = new AtomicLong();
+    private final AtomicLong failedRecords = new AtomicLong();
+    private final AtomicLong failedOperations = new AtomicLong();
+    private final LatencyRecorder latencies = new LatencyRecorder();
+    private volatile boolean stopped;
+
+    // next time a record may start when rate limited, in System.nanoTime() terms
+    private final AtomicLong nextPermitNanos = new AtomicLong();
+    private long permitIntervalNanos;
+
+    LoadGenerator(String name) {
+        _name = name;
+        _concurrency = Math.max(1, AppConfig.getInt("load.concurrency", 1));
+        _targetRecordsPerSecond = Math.max(0, AppConfig.getLong("load.targetRecordsPerSecond", 0));
+        _maxLagNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(0, AppConfig.getLong("load.maxLagMillis", 1000)));
+        _durationSeconds = Math.max(0, AppConfig.getLong("load.durationSeconds", 0));
+        _executorType = AppConfig.getString("load.executor", "virtual");
+    }
+
+    int getConcurrency() {
+        return _concurrency;
+    }
+
+    /**
+     * Start no more operations.  Operations already running finish, and
+     * run() returns once they have.
+     */
+    void stop() {
+        stopped = true;
+    }
+
+    /**
+     * Run the operation until totalRecords have been written, or for
+     * load.durationSeconds if that's set.
+     *
+     * @param recordsPerOperation how many records each operation writes.
+     * @return number of records written, not counting failed operations.
+     */
+    long run(long totalRecords, int recordsPerOperation, Operation operation) {
+        return run(totalRecords, recordsPerOperation, false, operation);
+    }
+
+    /**
+     * @param striped give worker w operations w, w + concurrency, w + 2 *
+     * concurrency and so on, rather than the next one waiting.  An
+     * operation can then tell from its first record which worker runs it,
+     * e.g., to keep each worker to its own keys.  A slow worker isn't
+     * helped out by the others, though.
+     */
+    long run(long totalRecords, int recordsPerOperation, boolean striped, Operation operation) {
+
+        long deadlineNanos = _durationSeconds > 0 ? System.nanoTime() + TimeUnit.SECONDS.toNanos(_durationSeconds) : Long.MAX_VALUE;
+        long recordLimit = _durationSeconds > 0 ? Long.MAX_VALUE : totalRecords;
+        permitIntervalNanos = _targetRecordsPerSecond > 0 ? TimeUnit.SECONDS.toNanos(1) / _targetRecordsPerSecond : 0;
+        nextPermitNanos.set(System.nanoTime());
+
+        ScheduledExecutorService reporter = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "load-reporter");
+            t.setDaemon(true);
+            return t;
+        });
+        long startNanos = System.nanoTime();
+        long[] lastCompleted = {0};
+        reporter.scheduleAtFixedRate(() -> {
+            long completed = completedRecords.get();
+            long failed = failedRecords.get();
+            if (failed > 0) {
+                logger.info("{} - {} records/sec, {} total, {} failed", _name, completed - lastCompleted[0], completed, failed);
+            } else {
+                logger.info("{} - {} records/sec, {} total", _name, completed - lastCompleted[0], completed);
+            }
+            lastCompleted[0] = completed;
+        }, 1, 1, TimeUnit.SECONDS);
+
+        if (logger.isInfoEnabled()) {
+            logger.info("{} - starting with {} workers{}{}", _name, _concurrency,
+                    _targetRecordsPerSecond > 0 ? ", target " + _targetRecordsPerSecond + " records/sec" : "",
+                    _durationSeconds > 0 ? ", for " + _durationSeconds + " seconds" : ", " + totalRecords + " records");
+        }
+
+        ExecutorService executor = createExecutor();
+        List<Future<?>> workers = new ArrayList<>(_concurrency);
+        for (int i = 0; i < _concurrency; i++) {
+            int worker = i;
+            workers.add(executor.submit(() -> runWorker(striped ? worker : -1, recordLimit, deadlineNanos, recordsPerOperation, operation)));
+        }
+
+        for (Future<?> worker : workers) {
+            try {
+                worker.get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            } catch (ExecutionException e) {
+                logger.error("{} - worker failed: {}", _name, e.getCause().toString());
+            }
+        }
+
+        executor.shutdownNow();
+        reporter.shutdownNow();
+
+        long elapsedNanos = System.nanoTime() - startNanos;
+        logSummary(elapsedNanos);
+
+        return completedRecords.get();
+    }
+
+    // stripe is the worker's number in striped runs, otherwise -1
+    private void runWorker(int stripe, long recordLimit, long deadlineNanos, int recordsPerOperation, Operation operation) {
+        long nextOperation = stripe;
+        while (!stopped && !Thread.currentThread().isInterrupted() && System.nanoTime() < deadlineNanos) {
+            long firstRecord;
+            if (stripe < 0) {
+                firstRecord = nextRecord.getAndAdd(recordsPerOperation);
+            } else {
+                firstRecord = nextOperation * recordsPerOperation;
+                nextOperation += _concurrency;
+            }
+            if (firstRecord >= recordLimit) {
+                return;
+            }
+            int recordCount = (int) Math.min(recordsPerOperation, recordLimit - firstRecord);
+
+            long start = acquirePermits(recordCount);
+            if (stopped) {
+                return;
+            }
+
+            if (operation.run(firstRecord, recordCount)) {
+                latencies.record(System.nanoTime() - start);
+                completedRecords.addAndGet(recordCount);
+            } else {
+                failedOperations.incrementAndGet();
+                failedRecords.addAndGet(recordCount);
+            }
+        }
+    }
+
+    // Each record gets the next start time slot; a thread that's early
+    // waits for its slot, so the overall rate stays at the target even when
+    // operations take different amounts of time.  When the run has fallen
+    // more than load.maxLagMillis behind, the slots before that are
+    // skipped, so catching up can't turn into an unlimited burst.
+    //
+    // Returns the time the operation should be timed from: its slot in a
+    // rate-limited run, otherwise now.
+    private long acquirePermits(int records) {
+        long now = System.nanoTime();
+        if (permitIntervalNanos == 0) {
+            return now;
+        }
+        long slot;
+        while (true) {
+            long next = nextPermitNanos.get();
+            slot = Math.max(next, now - _maxLagNanos);
+            if (nextPermitNanos.compareAndSet(next, slot + permitIntervalNanos * records)) {
+                break;
+            }
+        }
+        // parkNanos can return early, e.g., on a spurious wakeup
+        long wait;
+        while ((wait = slot - System.nanoTime()) > 0 && !stopped) {
+            LockSupport.parkNanos(wait);
+        }
+        return slot;
+    }
+
+    private ExecutorService createExecutor() {
+        if ("virtual".equalsIgnoreCase(_executorType)) {
+            // virtual threads are only in newer JVMs, so look for them at runtime
+            try {
+                return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+            } catch (ReflectiveOperationException e) {
+                logger.debug("Virtual threads aren't available, using platform threads");
+            }
+        }
+        return Executors.newFixedThreadPool(_concurrency, r -> {
+            Thread t = new Thread(r);
+            t.setName("load-worker-" + t.getId());
+            return t;
+        });
+    }
+
+    private void logSummary(long elapsedNanos) {
+        long completed = completedRecords.get();
+        double seconds = elapsedNanos / 1e9;
+        logger.info(String.format("%s - %d records in %.1f seconds (%.0f records/sec), %d operations",
+                _name, completed, seconds, seconds > 0 ? completed / seconds : 0, latencies.getCount()));
+        long failedOperationCount = failedOperations.get();
+        if (failedOperationCount > 0) {
+            logger.warn(String.format("%s - %d records in %d operations failed and aren't counted above",
+                    _name, failedRecords.get(), failedOperationCount));
+        }
+        logger.info(String.format("%s - operation latency ms: p50=%.2f p90=%.2f p99=%.2f p99.9=%.2f max=%.2f",
+                _name,
+                latencies.getPercentileNanos(50) / 1e6,
+                latencies.getPercentileNanos(90) / 1e6,
+                latencies.getPercentileNanos(99) / 1e6,
+                latencies.getPercentileNanos(99.9) / 1e6,
+                latencies.getMaxNanos() / 1e6));
+    }
+
+}
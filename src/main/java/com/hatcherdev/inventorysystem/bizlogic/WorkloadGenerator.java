@@ -0,0 +1,299 @@
+package com.hatcherdev.inventorysystem.bizlogic;
+
+import com.hatcherdev.inventorysystem.config.AppConfig;
+import com.hatcherdev.inventorysystem.objects.Inventory;
+import com.hatcherdev.inventorysystem.objects.InventoryColumns;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.SplittableRandom;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Makes up inventory changes for the load runs, cheaply enough that
+ * generating them isn't what limits a run.
+ *
+ * Settings:
+ *   workload.distribution    how SKUs are picked:
+ *                              uniform  a new random SKU every time
+ *                              zipfian  SKUs from a fixed set of workload.skuCount, a few of them hot
+ *   workload.stores          the stores changes go to, e.g., "1", "1-100" or "1-10,20,30-39"
+ *   workload.lanes           split the stores into this many lanes of neighbouring store
+ *                            numbers; 0 means one per load worker, 1 means no lanes
+ *   workload.storeBatches    send all of an operation's changes to one store
+ *   workload.seed            0 picks a seed at random and logs it; anything else repeats the same changes
+ *   workload.skuCount        size of the zipfian SKU set
+ *   workload.zipfian.theta   skew of the zipfian set, above 0 and below 1
+ *   workload.delta.min, workload.delta.max   the range of each change, inclusive
+ *
+ * Rows are keyed ( store_no, product_sku ), so each store is its own
+ * stretch of the primary key.  Spreading changes over many stores spreads
+ * them over many ranges, and so over the cluster's nodes; a lane's stores
+ * are a stretch of the key that no other lane writes, and with
+ * storeBatches each upsert batch stays within one store.
+ *
+ * The changes for records [first, first + n) come from a SplittableRandom
+ * seeded from the run's seed and first.  So each operation has random
+ * state of its own, with nothing shared between threads, and a seed
+ * produces the same changes for the same records however the operations
+ * are spread over threads.
+ */
+class WorkloadGenerator {
+
+    private static final Logger logger = LoggerFactory.getLogger(WorkloadGenerator.class);
+
+    private static final long GOLDEN_GAMMA = 0x9E3779B97F4A7C15L;
+    // a store list bigger than this is almost certainly a typo
+    private static final int MAX_STORES = 1000000;
+
+    /**
+     * Picks the SKU for each change.  Implementations don't change after
+     * they're built, so one is shared by every thread.
+     */
+    interface KeyDistribution {
+        /**
+         * @return a packed SKU; see InventoryColumns.packSku.
+         */
+        long nextSkuCode(SplittableRandom random);
+    }
+
+    private final KeyDistribution _distribution;
+    private final int[][] _laneStores;
+    private final boolean _storeBatches;
+    private final long _seed;
+    private final int _minDelta;
+    private final int _deltaRange;
+
+    /**
+     * @param stores the stores to write to, in the order lanes split them.
+     */
+    WorkloadGenerator(KeyDistribution distribution, int[] stores, int lanes, boolean storeBatches, long seed, int minDelta, int maxDelta) {
+        _distribution = distribution;
+        _laneStores = splitLanes(stores, lanes);
+        _storeBatches = storeBatches;
+        _seed = seed;
+        _minDelta = Math.min(minDelta, maxDelta);
+        _deltaRange = Math.abs(maxDelta - minDelta) + 1;
+    }
+
+    /**
+     * @param workers the load run's workers, for workload.lanes=0.
+     */
+    static WorkloadGenerator fromConfig(int defaultStoreNumber, int workers) {
+
+        long seed = AppConfig.getLong("workload.seed", 0);
+        if (seed == 0) {
+            seed = new SplittableRandom().nextLong();
+            logger.info("Workload seed {} (set workload.seed to repeat this run's changes)", seed);
+        }
+
+        String distributionName = AppConfig.getString("workload.distribution", "uniform");
+        KeyDistribution distribution;
+        if ("zipfian".equalsIgnoreCase(distributionName)) {
+            distribution = new Zipfian(
+                    Math.max(1, AppConfig.getLong("workload.skuCount", 1000000)),
+                    AppConfig.getString("workload.zipfian.theta", "0.99"));
+        } else {
+            if (!"uniform".equalsIgnoreCase(distributionName)) {
+                logger.warn("Unknown workload.distribution {}, using uniform", distributionName);
+            }
+            distribution = new Uniform();
+        }
+
+        int[] stores = parseStores(AppConfig.getString("workload.stores", Integer.toString(defaultStoreNumber)), defaultStoreNumber);
+        int lanes = AppConfig.getInt("workload.lanes", 1);
+        if (lanes <= 0) {
+            lanes = workers;
+        }
+
+        return new WorkloadGenerator(distribution, stores, lanes,
+                AppConfig.getBoolean("workload.storeBatches", true), seed,
+                AppConfig.getInt("workload.delta.min", 1),
+                AppConfig.getInt("workload.delta.max", 5));
+    }
+
+    int getLaneCount() {
+        return _laneStores.length;
+    }
+
+    /**
+     * @return the lane's stores, e.g., "store 7" or "25 stores from 1 to
+     * 25", for logging.
+     */
+    String describeLane(int lane) {
+        int[] stores = _laneStores[lane];
+        if (stores.length == 1) {
+            return "store " + stores[0];
+        }
+        return stores.length + " stores from " + stores[0] + " to " + stores[stores.length - 1];
+    }
+
+    /**
+     * @return the changes for the records starting at firstRecord, in the
+     * given lane's stores.  A Changes belongs to the thread that asked for
+     * it.
+     */
+    Changes changes(long firstRecord, int lane) {
+        return new Changes(new SplittableRandom(mix64(_seed + firstRecord * GOLDEN_GAMMA)), _laneStores[lane]);
+    }
+
+    class Changes {
+
+        private final SplittableRandom random;
+        private final int[] stores;
+        // the store for the whole operation with storeBatches, otherwise -1
+        private final int batchStoreIndex;
+
+        private Changes(SplittableRandom random, int[] stores) {
+            this.random = random;
+            this.stores = stores;
+            this.batchStoreIndex = _storeBatches ? random.nextInt(stores.length) : -1;
+        }
+
+        Inventory next() {
+            int storeNumber = stores[batchStoreIndex >= 0 ? batchStoreIndex : random.nextInt(stores.length)];
+            String productSku = InventoryColumns.unpackSku(_distribution.nextSkuCode(random));
+            return new Inventory(storeNumber, productSku, nextDelta());
+        }
+
+        int nextDelta() {
+            return _minDelta + random.nextInt(_deltaRange);
+        }
+    }
+
+    /**
+     * Parse a list of store numbers and ranges, e.g., "1-10,20,30-39",
+     * into sorted, distinct store numbers.  Anything that doesn't parse
+     * falls back to the default store.
+     */
+    static int[] parseStores(String value, int defaultStoreNumber) {
+        TreeSet<Integer> stores = new TreeSet<>();
+        try {
+            for (String part : value.split(",")) {
+                part = part.trim();
+                int dash = part.indexOf('-', 1);
+                int first = Integer.parseInt(dash < 0 ? part : part.substring(0, dash).trim());
+                int last = dash < 0 ? first : Integer.parseInt(part.substring(dash + 1).trim());
+                if (last < first || (long) last - first >= MAX_STORES) {
+                    throw new NumberFormatException(part);
+                }
+                for (int store = first; store <= last; store++) {
+                    stores.add(store);
+                }
+            }
+        } catch (NumberFormatException e) {
+            logger.warn("Invalid workload.stores {}, using store {}", value, defaultStoreNumber);
+            return new int[]{defaultStoreNumber};
+        }
+        int[] storeNumbers = new int[stores.size()];
+        int i = 0;
+        for (int store : stores) {
+            storeNumbers[i++] = store;
+        }
+        return storeNumbers;
+    }
+
+    // Contiguous runs of the sorted stores, so each lane is one stretch of
+    // the primary key.  There are never more lanes than stores.
+    private static int[][] splitLanes(int[] stores, int lanes) {
+        if (lanes > stores.length) {
+            logger.warn("Only {} stores for {} workload lanes, using {} lanes", stores.length, lanes, stores.length);
+        }
+        int laneCount = Math.max(1, Math.min(lanes, stores.length));
+        int[][] laneStores = new int[laneCount][];
+        for (int lane = 0; lane < laneCount; lane++) {
+            int from = (int) ((long) stores.length * lane / laneCount);
+            int to = (int) ((long) stores.length * (lane + 1) / laneCount);
+            laneStores[lane] = Arrays.copyOfRange(stores, from, to);
+        }
+        return laneStores;
+    }
+
+    // the finalizer from MurmurHash3, so nearby inputs give unrelated outputs
+    static long mix64(long z) {
+        z = (z ^ (z >>> 33)) * 0xff51afd7ed558ccdL;
+        z = (z ^ (z >>> 33)) * 0xc4ceb9fe1a85ec53L;
+        return z ^ (z >>> 33);
+    }
+
+    static class Uniform implements KeyDistribution {
+
+        @Override
+        public long nextSkuCode(SplittableRandom random) {
+            return random.nextLong(InventoryColumns.PACKED_SKU_CODES);
+        }
+    }
+
+    /**
+     * SKUs by rank from a Zipfian distribution, where rank 0 is the most
+     * popular, using the method from Gray et al., "Quickly Generating
+     * Billion-Record Synthetic Databases" (as YCSB does).  Ranks are
+     * scrambled into SKUs so the hot items aren't next to each other in
+     * the primary key.
+     */
+    static class Zipfian implements KeyDistribution {
+
+        // zeta(n, theta) is a Math.pow per item, about 100ms for a million,
+        // and daemon mode builds a new Zipfian every interval
+        private static final Map<String, Double> zetaCache = new ConcurrentHashMap<>();
+
+        private final long _items;
+        private final double _alpha;
+        private final double _zetan;
+        private final double _eta;
+        private final double _secondRankThreshold;
+
+        Zipfian(long items, String theta) {
+            _items = items;
+            double parsedTheta;
+            try {
+                parsedTheta = Double.parseDouble(theta);
+            } catch (NumberFormatException e) {
+                parsedTheta = -1;
+            }
+            if (!(parsedTheta > 0 && parsedTheta < 1)) {
+                logger.warn("workload.zipfian.theta must be above 0 and below 1, using 0.99");
+                parsedTheta = 0.99;
+            }
+            _alpha = 1.0 / (1.0 - parsedTheta);
+            _zetan = zeta(items, parsedTheta);
+            double zeta2 = zeta(2, parsedTheta);
+            _eta = (1 - Math.pow(2.0 / items, 1 - parsedTheta)) / (1 - zeta2 / _zetan);
+            _secondRankThreshold = 1 + Math.pow(0.5, parsedTheta);
+        }
+
+        private static double zeta(long n, double theta) {
+            return zetaCache.computeIfAbsent(n + ":" + theta, key -> sumZeta(n, theta));
+        }
+
+        private static double sumZeta(long n, double theta) {
+            double sum = 0;
+            for (long i = 1; i <= n; i++) {
+                sum += 1 / Math.pow(i, theta);
+            }
+            return sum;
+        }
+
+        long nextRank(SplittableRandom random) {
+            double u = random.nextDouble();
+            double uz = u * _zetan;
+            if (uz < 1 || _items == 1) {
+                return 0;
+            }
+            if (uz < _secondRankThreshold) {
+                return 1;
+            }
+            return Math.min(_items - 1, (long) (_items * Math.pow(_eta * u - _eta + 1, _alpha)));
+        }
+
+        @Override
+        public long nextSkuCode(SplittableRandom random) {
+            return Long.remainderUnsigned(mix64(nextRank(random)), InventoryColumns.PACKED_SKU_CODES);
+        }
+    }
+
+}
@@ -0,0 +1,119 @@
+package com.hatcherdev.inventorysystem.config;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Properties;
+
+/**
+ * Application settings.
+ *
+ * Values are read from "inventoryapp.properties" on the classpath, then
+ * from a properties file given with load(), if any.  Either can be
+ * overridden with JVM system properties of the same name, e.g.,
+ * "-Dinventory.batch.size=500", and those with values passed to set(),
+ * e.g., from command line arguments.
+ *
+ * Settings are read when the classes that use them are created, so files
+ * and overrides should be in place before any work starts.
+ */
+public final class AppConfig {
+
+    private static final Logger logger = LoggerFactory.getLogger(AppConfig.class);
+
+    private static final String CONFIG_RESOURCE = "inventoryapp.properties";
+
+    private static final Properties properties = loadProperties();
+    private static final Properties overrides = new Properties();
+
+    private AppConfig() {
+    }
+
+    private static Properties loadProperties() {
+        Properties props = new Properties();
+        try (InputStream in = AppConfig.class.getClassLoader().getResourceAsStream(CONFIG_RESOURCE)) {
+            if (in != null) {
+                props.load(in);
+            }
+        } catch (IOException e) {
+            logger.warn("Unable to read {}, using defaults: {}", CONFIG_RESOURCE, e.toString());
+        }
+        return props;
+    }
+
+    /**
+     * Read settings from a properties file.  They replace settings of the
+     * same name from the classpath file.
+     */
+    public static void load(Path file) throws IOException {
+        Properties fileProperties = new Properties();
+        try (Reader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            fileProperties.load(reader);
+        }
+        properties.putAll(fileProperties);
+        logger.info("Read {} settings from {}", fileProperties.size(), file);
+    }
+
+    /**
+     * Override one setting, taking precedence over the files and system
+     * properties.
+     */
+    public static void set(String key, String value) {
+        overrides.setProperty(key, value);
+    }
+
+    public static String getString(String key, String defaultValue) {
+        String value = overrides.getProperty(key);
+        if (value == null) {
+            value = System.getProperty(key);
+        }
+        if (value == null) {
+            value = properties.getProperty(key);
+        }
+        if (value == null || value.isBlank()) {
+            return defaultValue;
+        }
+        return value.trim();
+    }
+
+    public static int getInt(String key, int defaultValue) {
+        String value = getString(key, null);
+        if (value == null) {
+            return defaultValue;
+        }
+        try {
+            return Integer.parseInt(value);
+        } catch (NumberFormatException e) {
+            logger.warn("Invalid integer for {} ({}), using {}", key, value, defaultValue);
+            return defaultValue;
+        }
+    }
+
+    public static long getLong(String key, long defaultValue) {
+        String value = getString(key, null);
+        if (value == null) {
+            return defaultValue;
+        }
+        try {
+            return Long.parseLong(value);
+        } catch (NumberFormatException e) {
+            logger.warn("Invalid long for {} ({}), using {}", key, value, defaultValue);
+            return defaultValue;
+        }
+    }
+
+    public static boolean getBoolean(String key, boolean defaultValue) {
+        String value = getString(key, null);
+        if (value == null) {
+            return defaultValue;
+        }
+        return Boolean.parseBoolean(value);
+    }
+
+}
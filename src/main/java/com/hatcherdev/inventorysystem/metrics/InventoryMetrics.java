@@ -0,0 +1,222 @@
+package com.hatcherdev.inventorysystem.metrics;
+
+import com.hatcherdev.inventorysystem.config.AppConfig;
+
+import io.prometheus.client.CollectorRegistry;
+import io.prometheus.client.Counter;
+import io.prometheus.client.Gauge;
+import io.prometheus.client.Histogram;
+import io.prometheus.client.exporter.HTTPServer;
+import io.prometheus.client.exporter.PushGateway;
+import io.prometheus.client.hotspot.DefaultExports;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Prometheus metrics for the app.
+ *
+ * Long-running modes serve them over HTTP with startHttpServer(); one-shot
+ * runs push them to the Pushgateway with push() before exiting.
+ */
+public final class InventoryMetrics {
+
+    private static final Logger logger = LoggerFactory.getLogger(InventoryMetrics.class);
+
+    public static final Histogram SQL_DURATION = Histogram.build()
+            .name("inventory_sql_duration_seconds")
+            .help("Time to run a SQL statement or transaction, including retries.")
+            .labelNames("statement")
+            .buckets(0.001, 0.0025, 0.005, 0.01, 0.025, 0.05, 0.1, 0.25, 0.5, 1, 2.5, 5, 10)
+            .register();
+
+    public static final Counter SQL_RETRIES = Counter.build()
+            .name("inventory_sql_retries_total")
+            .help("Transactions retried after a 40001 retry error.")
+            .labelNames("statement")
+            .register();
+
+    public static final Counter SQL_RETRY_BACKOFF_SECONDS = Counter.build()
+            .name("inventory_sql_retry_backoff_seconds_total")
+            .help("Time spent backing off between transaction retries.")
+            .labelNames("statement")
+            .register();
+
+    public static final Counter SQL_RETRY_BUDGET_EXHAUSTED = Counter.build()
+            .name("inventory_sql_retry_budget_exhausted_total")
+            .help("Transactions that failed instead of retrying because the process retry budget was used up.")
+            .labelNames("statement")
+            .register();
+
+    public static final Counter SQL_ABORTS = Counter.build()
+            .name("inventory_sql_aborts_total")
+            .help("Statements that failed, either with a non-retryable error or after the max number of retries.")
+            .labelNames("statement")
+            .register();
+
+    public static final Counter EVENTS_PRODUCED = Counter.build()
+            .name("inventory_events_produced_total")
+            .help("Inventory events acknowledged by the event log.")
+            .register();
+
+    public static final Counter EVENTS_PRODUCE_FAILED = Counter.build()
+            .name("inventory_events_produce_failed_total")
+            .help("Inventory events that could not be sent.")
+            .register();
+
+    public static final Counter EVENTS_CONSUMED = Counter.build()
+            .name("inventory_events_consumed_total")
+            .help("Inventory events read by the consumer workers.")
+            .register();
+
+    public static final Gauge CONSUMER_LAG = Gauge.build()
+            .name("inventory_consumer_lag_records")
+            .help("Records between a partition's end offset and the consumer's position.")
+            .labelNames("topic", "partition")
+            .register();
+
+    public static final Counter PARTITION_EVENTS = Counter.build()
+            .name("inventory_partition_events_total")
+            .help("Inventory events per topic partition, as produced or consumed.")
+            .labelNames("side", "partition")
+            .register();
+
+    public static final Gauge PARTITION_SKEW = Gauge.build()
+            .name("inventory_partition_skew_ratio")
+            .help("Events in the busiest partition over the mean per partition; 1 is perfectly even.")
+            .labelNames("side")
+            .register();
+
+    public static final Counter KEY_SEQUENCE_ANOMALIES = Counter.build()
+            .name("inventory_key_sequence_anomalies_total")
+            .help("Sequenced inventory events that were duplicates (and skipped) or never arrived (gaps).")
+            .labelNames("kind")
+            .register();
+
+    public static final Histogram BATCH_SIZE = Histogram.build()
+            .name("inventory_batch_size")
+            .help("Number of items in each batch, by kind of batch.")
+            .labelNames("batch")
+            .exponentialBuckets(1, 4, 10)
+            .register();
+
+    public static final Counter LOOKUP_CACHE_REQUESTS = Counter.build()
+            .name("inventory_lookup_cache_requests_total")
+            .help("Single-item inventory lookups, by whether the count was cached.")
+            .labelNames("result")
+            .register();
+
+    public static final Gauge TIME_TO_FIRST_WRITE = Gauge.build()
+            .name("inventory_time_to_first_write_seconds")
+            .help("Seconds from JVM start to the first write to the database, Kafka or the file event log.")
+            .labelNames("destination")
+            .register();
+
+    private static final Map<String, String> statementLabels = new ConcurrentHashMap<>();
+
+    private static boolean jvmMetricsRegistered;
+    private static final AtomicBoolean firstWriteRecorded = new AtomicBoolean();
+
+    private InventoryMetrics() {
+    }
+
+    /**
+     * A short, low-cardinality label for a SQL statement: its verb and the
+     * table it works on, e.g., "insert inventory".
+     */
+    public static String statementLabel(String sqlCode) {
+        return statementLabels.computeIfAbsent(sqlCode, InventoryMetrics::buildStatementLabel);
+    }
+
+    private static String buildStatementLabel(String sqlCode) {
+        String[] words = sqlCode.trim().toLowerCase(Locale.ROOT).split("[\\s(]+");
+        if (words.length == 0 || words[0].isEmpty()) {
+            return "unknown";
+        }
+        String verb = words[0];
+        String tableKeyword;
+        switch (verb) {
+            case "insert":
+            case "upsert":
+                tableKeyword = "into";
+                break;
+            case "select":
+            case "delete":
+                tableKeyword = "from";
+                break;
+            case "update":
+                return words.length > 1 ? verb + " " + words[1] : verb;
+            default:
+                return verb;
+        }
+        for (int i = 1; i < words.length - 1; i++) {
+            if (words[i].equals(tableKeyword)) {
+                return verb + " " + words[i + 1].replace(";", "");
+            }
+        }
+        return verb;
+    }
+
+    /**
+     * Serve the metrics at http://host:port/metrics.
+     *
+     * @return the server, or null if it couldn't be started.
+     */
+    public static synchronized HTTPServer startHttpServer() {
+        registerJvmMetrics();
+        int port = AppConfig.getInt("metrics.http.port", 9400);
+        try {
+            HTTPServer server = new HTTPServer(port, true);
+            logger.info("Serving metrics on port {}", port);
+            return server;
+        } catch (IOException e) {
+            logger.warn("Unable to serve metrics on port {}: {}", port, e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * Push the metrics to the Pushgateway at metrics.pushgateway.address
+     * under the given job name.  Does nothing if no address is configured.
+     */
+    public static void push(String job) {
+        String address = AppConfig.getString("metrics.pushgateway.address", "");
+        if (address.isEmpty()) {
+            return;
+        }
+        try {
+            new PushGateway(address).pushAdd(CollectorRegistry.defaultRegistry, job);
+        } catch (IOException e) {
+            logger.warn("Unable to push metrics to {}: {}", address, e.getMessage());
+        }
+    }
+
+    /**
+     * Note a successful write.  The first one in the process sets
+     * TIME_TO_FIRST_WRITE and is logged, so changes in startup time show up
+     * from run to run; later ones cost a volatile read.
+     */
+    public static void recordFirstWrite(String destination) {
+        if (firstWriteRecorded.get() || !firstWriteRecorded.compareAndSet(false, true)) {
+            return;
+        }
+        long millis = System.currentTimeMillis() - ManagementFactory.getRuntimeMXBean().getStartTime();
+        TIME_TO_FIRST_WRITE.labels(destination).set(millis / 1e3);
+        logger.info("First write to {} {} ms after JVM start", destination, millis);
+    }
+
+    public static synchronized void registerJvmMetrics() {
+        if (!jvmMetricsRegistered) {
+            DefaultExports.initialize();
+            jvmMetricsRegistered = true;
+        }
+    }
+
+}
@@ -0,0 +1,230 @@
+package com.hatcherdev.inventorysystem.objects;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+
+/**
+ * A compact, column-oriented list of inventory rows for bulk work over
+ * many rows.
+ *
+ * Store numbers and counts are kept in int arrays.  SKUs that are 10
+ * characters of 0-9 and A-Z (the format the app generates) are packed
+ * into a long as a base 36 number; any other SKU is kept as a String on
+ * the side.  That's 16 bytes per row instead of an Inventory object plus a
+ * String, and a pass over one column reads contiguous memory.
+ *
+ * Rows are read by index or through a View.  The iterator hands out the
+ * same View for every row, so don't hold on to it between rows.
+ */
+public class InventoryColumns implements Iterable<InventoryColumns.View> {
+
+    public static final int PACKED_SKU_LENGTH = 10;
+    // 36^10: packed SKUs are the numbers 0 up to, but not including, this
+    public static final long PACKED_SKU_CODES = 3656158440062976L;
+
+    private static final byte[] SKU_ALPHABET = "0123456789ABCDEFGHIJKLMNOPQRSTUVWXYZ".getBytes(StandardCharsets.US_ASCII);
+
+    // the packed code for SKUs kept in otherSkus
+    private static final long UNPACKED_SKU = -1;
+
+    private int[] _storeNumbers;
+    private int[] _inventoryCounts;
+    private long[] _skuCodes;
+    private final Map<Integer, String> otherSkus = new HashMap<>();
+    private int _size;
+
+    public InventoryColumns() {
+        this(16);
+    }
+
+    public InventoryColumns(int initialCapacity) {
+        int capacity = Math.max(1, initialCapacity);
+        _storeNumbers = new int[capacity];
+        _inventoryCounts = new int[capacity];
+        _skuCodes = new long[capacity];
+    }
+
+    public static InventoryColumns from(List<Inventory> inventoryList) {
+        InventoryColumns columns = new InventoryColumns(inventoryList.size());
+        for (Inventory inventory : inventoryList) {
+            columns.add(inventory.getStoreNumber(), inventory.getProductSku(), inventory.getInventoryCount());
+        }
+        return columns;
+    }
+
+    /**
+     * @return the row's index.
+     */
+    public int add(int storeNumber, String productSku, int inventoryCount) {
+        if (_size == _storeNumbers.length) {
+            int capacity = _size + (_size >> 1) + 1;
+            _storeNumbers = Arrays.copyOf(_storeNumbers, capacity);
+            _inventoryCounts = Arrays.copyOf(_inventoryCounts, capacity);
+            _skuCodes = Arrays.copyOf(_skuCodes, capacity);
+        }
+        int index = _size++;
+        _storeNumbers[index] = storeNumber;
+        _inventoryCounts[index] = inventoryCount;
+        long skuCode = packSku(productSku);
+        _skuCodes[index] = skuCode;
+        if (skuCode == UNPACKED_SKU) {
+            otherSkus.put(index, productSku);
+        }
+        return index;
+    }
+
+    public int size() {
+        return _size;
+    }
+
+    public int getStoreNumber(int index) {
+        checkIndex(index);
+        return _storeNumbers[index];
+    }
+    public String getProductSku(int index) {
+        checkIndex(index);
+        long skuCode = _skuCodes[index];
+        return skuCode == UNPACKED_SKU ? otherSkus.get(index) : unpackSku(skuCode);
+    }
+    public int getInventoryCount(int index) {
+        checkIndex(index);
+        return _inventoryCounts[index];
+    }
+
+    /**
+     * @return the SKU packed into a long, or -1 if it isn't in the packed format.
+     */
+    public long getSkuCode(int index) {
+        checkIndex(index);
+        return _skuCodes[index];
+    }
+
+    public void setInventoryCount(int index, int inventoryCount) {
+        checkIndex(index);
+        _inventoryCounts[index] = inventoryCount;
+    }
+    public void addToInventoryCount(int index, int inventoryChange) {
+        checkIndex(index);
+        _inventoryCounts[index] += inventoryChange;
+    }
+
+    /**
+     * @return a new View positioned on the row.
+     */
+    public View view(int index) {
+        checkIndex(index);
+        View view = new View();
+        view._index = index;
+        return view;
+    }
+
+    public Inventory toInventory(int index) {
+        return new Inventory(getStoreNumber(index), getProductSku(index), getInventoryCount(index));
+    }
+
+    @Override
+    public Iterator<View> iterator() {
+        View view = new View();
+        return new Iterator<>() {
+            private int next = 0;
+
+            @Override
+            public boolean hasNext() {
+                return next < _size;
+            }
+
+            @Override
+            public View next() {
+                if (next >= _size) {
+                    throw new NoSuchElementException();
+                }
+                view._index = next++;
+                return view;
+            }
+        };
+    }
+
+    /**
+     * Packs a 10 character SKU of 0-9 and A-Z into a long.
+     *
+     * @return the packed SKU, or -1 if it isn't in that format.
+     */
+    public static long packSku(String productSku) {
+        if (productSku == null || productSku.length() != PACKED_SKU_LENGTH) {
+            return UNPACKED_SKU;
+        }
+        long code = 0;
+        for (int i = 0; i < PACKED_SKU_LENGTH; i++) {
+            char c = productSku.charAt(i);
+            int digit;
+            if (c >= '0' && c <= '9') {
+                digit = c - '0';
+            } else if (c >= 'A' && c <= 'Z') {
+                digit = c - 'A' + 10;
+            } else {
+                return UNPACKED_SKU;
+            }
+            code = code * 36 + digit;
+        }
+        return code;
+    }
+
+    /**
+     * The SKU for a packed code from 0 to PACKED_SKU_CODES - 1, which is
+     * also a cheap way to make a random SKU.
+     */
+    public static String unpackSku(long skuCode) {
+        byte[] chars = new byte[PACKED_SKU_LENGTH];
+        for (int i = PACKED_SKU_LENGTH - 1; i >= 0; i--) {
+            chars[i] = SKU_ALPHABET[(int) (skuCode % 36)];
+            skuCode /= 36;
+        }
+        // Latin-1 bytes become the String's own storage with compact strings
+        return new String(chars, StandardCharsets.ISO_8859_1);
+    }
+
+    private void checkIndex(int index) {
+        if (index < 0 || index >= _size) {
+            throw new IndexOutOfBoundsException("Index " + index + " out of bounds for size " + _size);
+        }
+    }
+
+    /**
+     * A movable view of one row, so rows can be read without creating an
+     * Inventory for each one.
+     */
+    public class View {
+        private int _index;
+
+        public int getIndex() {
+            return _index;
+        }
+        public int getStoreNumber() {
+            return _storeNumbers[_index];
+        }
+        public String getProductSku() {
+            return InventoryColumns.this.getProductSku(_index);
+        }
+        public long getSkuCode() {
+            return _skuCodes[_index];
+        }
+        public int getInventoryCount() {
+            return _inventoryCounts[_index];
+        }
+        public void setInventoryCount(int inventoryCount) {
+            _inventoryCounts[_index] = inventoryCount;
+        }
+
+        public View moveTo(int index) {
+            checkIndex(index);
+            _index = index;
+            return this;
+        }
+    }
+
+}
@@ -0,0 +1,110 @@
+package com.hatcherdev.inventorysystem.objects;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * A single inventory change event, as sent through the event topic.
+ *
+ * This is a mutable holder so a consumer can decode every record into the
+ * same instance.  The SKU is kept as ASCII bytes; getProductSku() only
+ * builds a String when one is asked for.
+ */
+public class InventoryEvent {
+
+    public static final int MAX_SKU_LENGTH = 255;
+
+    private int _storeNumber;
+    private final byte[] _skuBytes = new byte[MAX_SKU_LENGTH];
+    private int _skuLength;
+    private int _inventoryChange;
+    private long _eventTimestamp;
+    private long _eventId;
+    // the producer's sequence number for this event's key, or -1
+    private long _keySequence = -1;
+
+    public InventoryEvent() {
+
+    }
+
+    public InventoryEvent(int storeNumber, String productSku, int inventoryChange, long eventTimestamp, long eventId) {
+        _storeNumber = storeNumber;
+        setProductSku(productSku);
+        _inventoryChange = inventoryChange;
+        _eventTimestamp = eventTimestamp;
+        _eventId = eventId;
+    }
+
+    public int getStoreNumber() {
+        return _storeNumber;
+    }
+    public String getProductSku() {
+        return new String(_skuBytes, 0, _skuLength, StandardCharsets.US_ASCII);
+    }
+    public int getInventoryChange() {
+        return _inventoryChange;
+    }
+    public long getEventTimestamp() {
+        return _eventTimestamp;
+    }
+    public long getEventId() {
+        return _eventId;
+    }
+    public long getKeySequence() {
+        return _keySequence;
+    }
+
+    /**
+     * @return the buffer holding the SKU's ASCII bytes; only the first
+     * getSkuLength() bytes are part of the SKU.
+     */
+    public byte[] getSkuBytes() {
+        return _skuBytes;
+    }
+    public int getSkuLength() {
+        return _skuLength;
+    }
+
+    public void setStoreNumber(int storeNumber) {
+        _storeNumber = storeNumber;
+    }
+    public void setProductSku(String productSku) {
+        int length = productSku.length();
+        if (length > MAX_SKU_LENGTH) {
+            throw new IllegalArgumentException("SKU longer than " + MAX_SKU_LENGTH + " characters: " + productSku);
+        }
+        for (int i = 0; i < length; i++) {
+            char c = productSku.charAt(i);
+            if (c > 127) {
+                throw new IllegalArgumentException("SKU must be ASCII: " + productSku);
+            }
+            _skuBytes[i] = (byte) c;
+        }
+        _skuLength = length;
+    }
+    public void setProductSku(byte[] source, int offset, int length) {
+        if (length > MAX_SKU_LENGTH) {
+            throw new IllegalArgumentException("SKU longer than " + MAX_SKU_LENGTH + " bytes");
+        }
+        System.arraycopy(source, offset, _skuBytes, 0, length);
+        _skuLength = length;
+    }
+    public void setInventoryChange(int inventoryChange) {
+        _inventoryChange = inventoryChange;
+    }
+    public void setEventTimestamp(long eventTimestamp) {
+        _eventTimestamp = eventTimestamp;
+    }
+    public void setEventId(long eventId) {
+        _eventId = eventId;
+    }
+    public void setKeySequence(long keySequence) {
+        _keySequence = keySequence;
+    }
+
+    @Override
+    public String toString() {
+        return "InventoryEvent(store=" + _storeNumber + " sku=" + getProductSku() + " change=" + _inventoryChange
+                + " timestamp=" + _eventTimestamp + " id=" + _eventId + " seq=" + _keySequence + ")";
+    }
+
+}
@@ -0,0 +1,143 @@
+package com.hatcherdev.inventorysystem.DAO;
+
+import com.hatcherdev.inventorysystem.objects.InventoryEvent;
+
+import org.junit.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class InventoryEventCodecTest {
+
+    private static final String MAX_LENGTH_SKU = repeat('Z', InventoryEvent.MAX_SKU_LENGTH);
+
+    @Test
+    public void version1RoundTrip() {
+        byte[] value = InventoryEventCodec.encodeValue(42, "A1B2C3D4E5", -7, 1600000000000L, 123456789L);
+        assertEquals(InventoryEventCodec.VERSION, value[1]);
+
+        InventoryEvent event = decode("A1B2C3D4E5", 42, value);
+        assertEvent(event, 42, "A1B2C3D4E5", -7, 1600000000000L, 123456789L, -1);
+    }
+
+    @Test
+    public void version2RoundTrip() {
+        byte[] value = InventoryEventCodec.encodeValue(Integer.MAX_VALUE, "SKU", Integer.MIN_VALUE, 1L, Long.MAX_VALUE, 99L);
+        assertEquals(InventoryEventCodec.SEQUENCED_VERSION, value[1]);
+
+        InventoryEvent event = decode("SKU", Integer.MAX_VALUE, value);
+        assertEvent(event, Integer.MAX_VALUE, "SKU", Integer.MIN_VALUE, 1L, Long.MAX_VALUE, 99L);
+    }
+
+    @Test
+    public void eventRoundTripBothVersions() {
+        InventoryEvent event = new InventoryEvent(5, "XYZ", 3, 10L, 20L);
+        InventoryEvent decoded = new InventoryEvent();
+        assertTrue(InventoryEventCodec.decodeValue(InventoryEventCodec.encodeValue(event), decoded));
+        assertEvent(decoded, 5, "XYZ", 3, 10L, 20L, -1);
+
+        event.setKeySequence(0);
+        assertTrue(InventoryEventCodec.decodeValue(InventoryEventCodec.encodeValue(event), decoded));
+        assertEvent(decoded, 5, "XYZ", 3, 10L, 20L, 0);
+    }
+
+    @Test
+    public void legacyRoundTrip() {
+        byte[] key = InventoryEventCodec.encodeKey(-12, "A1B2");
+        assertArrayEquals("-12|A1B2".getBytes(StandardCharsets.US_ASCII), key);
+
+        InventoryEvent event = new InventoryEvent();
+        assertTrue(InventoryEventCodec.decode(key, InventoryEventCodec.encodeLegacyValue(-2147483648), 77L, event));
+        assertEvent(event, -12, "A1B2", Integer.MIN_VALUE, 77L, -1, -1);
+    }
+
+    @Test
+    public void maximumSkuLengthRoundTrips() {
+        byte[] key = InventoryEventCodec.encodeKey(1, MAX_LENGTH_SKU);
+        byte[] v1 = InventoryEventCodec.encodeValue(1, MAX_LENGTH_SKU, 1, 1L, 1L);
+        byte[] v2 = InventoryEventCodec.encodeValue(1, MAX_LENGTH_SKU, 1, 1L, 1L, 1L);
+
+        assertEquals(MAX_LENGTH_SKU, decode(MAX_LENGTH_SKU, 1, v1).getProductSku());
+        assertEquals(MAX_LENGTH_SKU, decode(MAX_LENGTH_SKU, 1, v2).getProductSku());
+
+        InventoryEvent legacy = new InventoryEvent();
+        assertTrue(InventoryEventCodec.decode(key, InventoryEventCodec.encodeLegacyValue(1), 1L, legacy));
+        assertEquals(MAX_LENGTH_SKU, legacy.getProductSku());
+    }
+
+    @Test
+    public void skuOverMaximumLengthIsRejected() {
+        String sku = MAX_LENGTH_SKU + "Z";
+        assertRejected(() -> InventoryEventCodec.encodeKey(1, sku));
+        assertRejected(() -> InventoryEventCodec.encodeValue(1, sku, 1, 1L, 1L));
+        assertRejected(() -> InventoryEventCodec.encodeValue(1, sku, 1, 1L, 1L, 1L));
+    }
+
+    @Test
+    public void asciiBoundaries() {
+        String lowest = "\u0000";
+        String highest = "\u007F";
+        assertEquals(lowest, decode(lowest, 1, InventoryEventCodec.encodeValue(1, lowest, 1, 1L, 1L)).getProductSku());
+        assertEquals(highest, decode(highest, 1, InventoryEventCodec.encodeValue(1, highest, 1, 1L, 1L, 1L)).getProductSku());
+
+        for (String sku : new String[]{"\u0080", "Aÿ", "€"}) {
+            assertRejected(() -> InventoryEventCodec.encodeKey(1, sku));
+            assertRejected(() -> InventoryEventCodec.encodeValue(1, sku, 1, 1L, 1L));
+            assertRejected(() -> InventoryEventCodec.encodeValue(1, sku, 1, 1L, 1L, 1L));
+        }
+    }
+
+    @Test
+    public void malformedValuesAreRejected() {
+        byte[] value = InventoryEventCodec.encodeValue(1, "SKU", 1, 1L, 1L, 1L);
+        InventoryEvent event = new InventoryEvent();
+
+        assertFalse(InventoryEventCodec.decodeValue(Arrays.copyOf(value, value.length - 1), event));
+        assertFalse(InventoryEventCodec.decodeValue(Arrays.copyOf(value, value.length + 1), event));
+
+        byte[] unknownVersion = value.clone();
+        unknownVersion[1] = 3;
+        assertFalse(InventoryEventCodec.decodeValue(unknownVersion, event));
+
+        assertFalse(InventoryEventCodec.decode("1|SKU".getBytes(StandardCharsets.US_ASCII), "x1".getBytes(StandardCharsets.US_ASCII), 1L, event));
+        assertFalse(InventoryEventCodec.decode("|SKU".getBytes(StandardCharsets.US_ASCII), "1".getBytes(StandardCharsets.US_ASCII), 1L, event));
+    }
+
+    private static InventoryEvent decode(String productSku, int storeNumber, byte[] value) {
+        InventoryEvent event = new InventoryEvent();
+        assertTrue(InventoryEventCodec.decode(InventoryEventCodec.encodeKey(storeNumber, productSku), value, 0L, event));
+        return event;
+    }
+
+    private static void assertEvent(InventoryEvent event, int storeNumber, String productSku, int inventoryChange,
+                                    long eventTimestamp, long eventId, long keySequence) {
+        assertEquals(storeNumber, event.getStoreNumber());
+        assertEquals(productSku, event.getProductSku());
+        assertEquals(inventoryChange, event.getInventoryChange());
+        assertEquals(eventTimestamp, event.getEventTimestamp());
+        assertEquals(eventId, event.getEventId());
+        assertEquals(keySequence, event.getKeySequence());
+    }
+
+    private static void assertRejected(Runnable encode) {
+        try {
+            encode.run();
+            fail("expected IllegalArgumentException");
+        } catch (IllegalArgumentException expected) {
+            // expected
+        }
+    }
+
+    private static String repeat(char c, int count) {
+        char[] chars = new char[count];
+        Arrays.fill(chars, c);
+        return new String(chars);
+    }
+
+}
@@ -0,0 +1,157 @@
+package com.hatcherdev.inventorysystem.DAO;
+
+import com.hatcherdev.inventorysystem.metrics.InventoryMetrics;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class KeySequenceTrackerTest {
+
+    private static final long PRODUCER = 7;
+    private static final int STORE = 1;
+    private static final String SKU = "A1B2C3D4E5";
+
+    private KeySequenceTracker tracker;
+    // the anomaly counters are process-wide, so tests look at how much they move
+    private double gapsBefore;
+    private double duplicatesBefore;
+    private double lateBefore;
+
+    @Before
+    public void setUp() {
+        tracker = new KeySequenceTracker(1000);
+        gapsBefore = count("gap");
+        duplicatesBefore = count("duplicate");
+        lateBefore = count("late");
+    }
+
+    @Test
+    public void inOrderDelivery() {
+        for (long sequence = 0; sequence < 200; sequence++) {
+            assertTrue(accept(sequence));
+        }
+        assertAnomalies(0, 0, 0);
+    }
+
+    @Test
+    public void duplicatesAreRejected() {
+        assertTrue(accept(0));
+        assertTrue(accept(1));
+        assertFalse(accept(1));
+        assertFalse(accept(0));
+        assertTrue(accept(2));
+        assertFalse(accept(2));
+        assertAnomalies(0, 3, 0);
+    }
+
+    @Test
+    public void outOfOrderInsideTheWindow() {
+        assertTrue(accept(0));
+        assertTrue(accept(5));
+        assertTrue(accept(3));
+        assertTrue(accept(1));
+        assertTrue(accept(4));
+        assertTrue(accept(2));
+        assertFalse(accept(3));
+        // everything up to 5 arrived, so nothing slides out as a gap
+        assertTrue(accept(5 + KeySequenceTracker.WINDOW));
+        assertAnomalies(0, 1, 0);
+    }
+
+    @Test
+    public void missingNumbersCountAsGapsOnceTheySlideOut() {
+        assertTrue(accept(0));
+        assertTrue(accept(2));
+        assertAnomalies(0, 0, 0);
+        // 1 leaves the window
+        assertTrue(accept(2 + KeySequenceTracker.WINDOW - 1));
+        assertAnomalies(1, 0, 0);
+    }
+
+    @Test
+    public void lateEventsPastTheWindowAreAccepted() {
+        assertTrue(accept(0));
+        assertTrue(accept(100));
+        // 1 .. 36 slid out of the window without being seen
+        assertAnomalies(36, 0, 0);
+        // too old to check, so applied even when repeated
+        assertTrue(accept(10));
+        assertTrue(accept(10));
+        assertAnomalies(36, 0, 2);
+    }
+
+    @Test
+    public void shiftOfAWindowOrMore() {
+        assertTrue(accept(0));
+        assertTrue(accept(2));
+        // a shift of exactly WINDOW slides out the whole window, in which only 1 is missing
+        assertTrue(accept(2 + KeySequenceTracker.WINDOW));
+        assertAnomalies(1, 0, 0);
+
+        // 3 .. WINDOW + 1 slide out, and so do the WINDOW numbers skipped over
+        assertTrue(accept(2 + 3L * KeySequenceTracker.WINDOW));
+        assertAnomalies(1 + (KeySequenceTracker.WINDOW - 1) + KeySequenceTracker.WINDOW, 0, 0);
+        assertFalse(accept(2 + 3L * KeySequenceTracker.WINDOW));
+        assertTrue(accept(1 + 3L * KeySequenceTracker.WINDOW));
+        assertAnomalies(1 + (KeySequenceTracker.WINDOW - 1) + KeySequenceTracker.WINDOW, 1, 0);
+    }
+
+    @Test
+    public void firstSequenceNotZero() {
+        // e.g., after a restart: the numbers just before the first one seen
+        // may still arrive from other partitions
+        assertTrue(accept(1000));
+        assertTrue(accept(999));
+        assertTrue(accept(990));
+        assertFalse(accept(999));
+        assertFalse(accept(1000));
+        assertTrue(accept(1001));
+        // numbers from before the first one aren't gaps if they never come
+        assertTrue(accept(1001 + KeySequenceTracker.WINDOW));
+        assertAnomalies(0, 2, 0);
+    }
+
+    @Test
+    public void releaseLetsAnEventBeAcceptedAgain() {
+        assertTrue(accept(0));
+        assertTrue(accept(1));
+        tracker.release(PRODUCER, STORE, SKU, 1);
+        assertTrue(accept(1));
+        tracker.release(PRODUCER, STORE, SKU, 0);
+        assertTrue(accept(0));
+        assertFalse(accept(0));
+        // releasing a key that was never seen, or a number out of the window, does nothing
+        tracker.release(PRODUCER, STORE, "OTHER", 0);
+        tracker.release(PRODUCER, STORE, SKU, 500);
+        assertFalse(accept(1));
+        assertAnomalies(0, 2, 0);
+    }
+
+    @Test
+    public void producersAndKeysAreTrackedSeparately() {
+        assertTrue(accept(0));
+        assertTrue(tracker.accept(PRODUCER + 1, STORE, SKU, 0));
+        assertTrue(tracker.accept(PRODUCER, STORE + 1, SKU, 0));
+        assertTrue(tracker.accept(PRODUCER, STORE, "OTHER", 0));
+        assertAnomalies(0, 0, 0);
+    }
+
+    private boolean accept(long sequence) {
+        return tracker.accept(PRODUCER, STORE, SKU, sequence);
+    }
+
+    private static double count(String kind) {
+        return InventoryMetrics.KEY_SEQUENCE_ANOMALIES.labels(kind).get();
+    }
+
+    private void assertAnomalies(long gaps, long duplicates, long late) {
+        assertEquals("gaps", gaps, count("gap") - gapsBefore, 0);
+        assertEquals("duplicates", duplicates, count("duplicate") - duplicatesBefore, 0);
+        assertEquals("late", late, count("late") - lateBefore, 0);
+    }
+
+}